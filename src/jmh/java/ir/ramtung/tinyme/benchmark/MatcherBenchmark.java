@@ -0,0 +1,57 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.domain.service.Matcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An incoming buy order sweeping the best {@code sweep} sell levels of a book
+ * holding {@code depth} orders per side. The swept levels are put back before
+ * every invocation, so each one matches against the same book.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MatcherBenchmark {
+    private static final int MID_PRICE = 100_000;
+    private static final int LEVEL_QUANTITY = 10;
+
+    @Param({"100", "1000", "10000"})
+    int depth;
+
+    @Param({"1", "10", "100"})
+    int sweep;
+
+    private Matcher matcher;
+    private Security security;
+    private SyntheticOrders orders;
+    private Order incoming;
+
+    @Setup(Level.Trial)
+    public void buildBook() {
+        matcher = new Matcher();
+        security = Security.builder().isin("BENCH").build();
+        orders = new SyntheticOrders(SyntheticOrders.SEED, security, SyntheticOrders.richBroker(1),
+                SyntheticOrders.shareholderOf(1, security));
+        orders.side(Side.BUY, depth, MID_PRICE - depth, depth, 100).forEach(security.getOrderBook()::enqueue);
+        for (int level = sweep; level < depth; level++)
+            security.getOrderBook().enqueue(orders.limit(Side.SELL, LEVEL_QUANTITY, MID_PRICE + level));
+    }
+
+    @Setup(Level.Invocation)
+    public void refillSweptLevels() {
+        for (int level = 0; level < sweep; level++)
+            security.getOrderBook().enqueue(orders.limit(Side.SELL, LEVEL_QUANTITY, MID_PRICE + level));
+        incoming = orders.limit(Side.BUY, sweep * LEVEL_QUANTITY, MID_PRICE + sweep - 1);
+    }
+
+    @Benchmark
+    public MatchResult execute() {
+        return matcher.execute(incoming);
+    }
+}
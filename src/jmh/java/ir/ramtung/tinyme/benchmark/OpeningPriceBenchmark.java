@@ -0,0 +1,56 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the indicative opening price of an auction book holding
+ * {@code depth} orders per side, with the two sides overlapping across
+ * {@code priceRange} prices. {@code repriceAfterEntry} adds the cost of
+ * keeping the depth up to date for the order that caused the new price.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OpeningPriceBenchmark {
+    private static final int LOWEST_PRICE = 100_000;
+
+    @Param({"10000"})
+    int depth;
+
+    @Param({"10", "1000", "100000"})
+    int priceRange;
+
+    private Security security;
+    private Order entering;
+
+    @Setup(Level.Trial)
+    public void buildBook() {
+        security = Security.builder().isin("BENCH").build();
+        SyntheticOrders orders = new SyntheticOrders(SyntheticOrders.SEED, security, SyntheticOrders.richBroker(1),
+                SyntheticOrders.shareholderOf(1, security));
+        orders.side(Side.BUY, depth, LOWEST_PRICE, priceRange, 100).forEach(security.getOrderBook()::enqueue);
+        orders.side(Side.SELL, depth, LOWEST_PRICE, priceRange, 100).forEach(security.getOrderBook()::enqueue);
+        security.getOrderBook().setLastTradePrice(LOWEST_PRICE + priceRange / 2);
+        entering = orders.limit(Side.BUY, 50, LOWEST_PRICE + priceRange / 3);
+    }
+
+    @Benchmark
+    public int updateIndicativeOpeningPrice() {
+        security.updateIndicativeOpeningPrice();
+        return security.getIndicativeOpeningPrice();
+    }
+
+    @Benchmark
+    public int repriceAfterEntry() {
+        security.getOrderBook().enqueue(entering);
+        security.updateIndicativeOpeningPrice();
+        security.getOrderBook().removeByOrderId(Side.BUY, entering.getOrderId());
+        return security.getIndicativeOpeningPrice();
+    }
+}
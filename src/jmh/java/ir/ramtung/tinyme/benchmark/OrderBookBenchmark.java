@@ -0,0 +1,60 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entering and removing orders on a book holding {@code depth} orders per
+ * side spread over {@code levels} prices. Every operation is paired with its
+ * inverse so the book keeps its shape for the whole run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderBookBenchmark {
+    private static final int MID_PRICE = 100_000;
+    private static final int BATCH = 1024;
+
+    @Param({"1000", "100000"})
+    int depth;
+
+    @Param({"10", "1000"})
+    int levels;
+
+    private OrderBook orderBook;
+    private List<Order> resting;
+    private List<Order> incoming;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void buildBook() {
+        Security security = Security.builder().isin("BENCH").build();
+        SyntheticOrders orders = new SyntheticOrders(SyntheticOrders.SEED, security, SyntheticOrders.richBroker(1),
+                SyntheticOrders.shareholderOf(1, security));
+        orderBook = security.getOrderBook();
+        orders.fillBook(orderBook, depth, MID_PRICE, levels, 100);
+        resting = List.copyOf(orderBook.getSellQueue().subList(0, Math.min(BATCH, depth)));
+        incoming = orders.side(Side.SELL, BATCH, MID_PRICE, levels, 100);
+    }
+
+    @Benchmark
+    public boolean enqueueThenRemove() {
+        Order order = incoming.get(next++ & (BATCH - 1));
+        orderBook.enqueue(order);
+        return orderBook.removeByOrderId(Side.SELL, order.getOrderId());
+    }
+
+    @Benchmark
+    public boolean removeThenEnqueue() {
+        Order order = resting.get(next++ % resting.size());
+        boolean removed = orderBook.removeByOrderId(Side.SELL, order.getOrderId());
+        orderBook.enqueue(order);
+        return removed;
+    }
+}
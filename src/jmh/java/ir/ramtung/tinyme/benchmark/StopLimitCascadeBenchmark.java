@@ -0,0 +1,89 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.domain.service.Matcher;
+import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.messaging.EventPublisher;
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A buy order whose trade starts a chain of {@code cascade} buy stop-limit
+ * activations, each trading one level higher and so triggering the next. The
+ * whole request goes through {@link OrderHandler}, with events discarded
+ * instead of being sent. The book is rebuilt before every invocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StopLimitCascadeBenchmark {
+    private static final int FIRST_PRICE = 100_000;
+    private static final int LEVEL_QUANTITY = 10;
+
+    static class DiscardingEventPublisher extends EventPublisher {
+        DiscardingEventPublisher() {
+            super(null, null);
+        }
+
+        @Override
+        public void publish(Event event) {
+        }
+
+        @Override
+        public void publish(List<Event> events) {
+        }
+    }
+
+    @Param({"1", "10", "100", "1000"})
+    int cascade;
+
+    private SecurityRepository securityRepository;
+    private OrderHandler orderHandler;
+    private Broker broker;
+    private Shareholder shareholder;
+    private EnterOrderRq trigger;
+
+    @Setup(Level.Trial)
+    public void setupHandler() {
+        securityRepository = new SecurityRepository();
+        BrokerRepository brokerRepository = new BrokerRepository();
+        ShareholderRepository shareholderRepository = new ShareholderRepository();
+        broker = SyntheticOrders.richBroker(1);
+        shareholder = Shareholder.builder().shareholderId(1).build();
+        brokerRepository.addBroker(broker);
+        shareholderRepository.addShareholder(shareholder);
+        orderHandler = new OrderHandler(securityRepository, brokerRepository, shareholderRepository,
+                new DiscardingEventPublisher(), new Matcher());
+    }
+
+    @Setup(Level.Invocation)
+    public void buildLadder() {
+        Security security = Security.builder().isin("BENCH").build();
+        securityRepository.addSecurity(security);
+        shareholder.incPosition(security, Integer.MAX_VALUE / 2);
+        SyntheticOrders orders = new SyntheticOrders(SyntheticOrders.SEED, security, broker, shareholder);
+        for (int level = 0; level <= cascade; level++)
+            security.getOrderBook().enqueue(orders.limit(Side.SELL, LEVEL_QUANTITY, FIRST_PRICE + level));
+        for (int level = 0; level < cascade; level++)
+            security.getOrderBook().enqueueInactiveStopLimitOrder(
+                    orders.stopLimit(Side.BUY, LEVEL_QUANTITY, FIRST_PRICE + level + 1, FIRST_PRICE + level));
+        trigger = EnterOrderRq.createNewOrderRq(1, "BENCH", Long.MAX_VALUE, LocalDateTime.now(), Side.BUY,
+                LEVEL_QUANTITY, FIRST_PRICE, broker.getBrokerId(), shareholder.getShareholderId(), 0, 0);
+    }
+
+    @Benchmark
+    public void cascade() {
+        orderHandler.handleEnterOrder(trigger);
+    }
+}
@@ -0,0 +1,87 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Reproducible order flow for the benchmarks. Every generator is seeded, so
+ * two runs with the same parameters build exactly the same books. Entry
+ * times advance by one microsecond per order to keep time priority stable.
+ */
+public class SyntheticOrders {
+    public static final long SEED = 20240501L;
+
+    private final SplittableRandom random;
+    private final Security security;
+    private final Broker broker;
+    private final Shareholder shareholder;
+    private final LocalDateTime start = LocalDateTime.of(2024, 1, 1, 9, 0);
+    private long nextOrderId = 1;
+
+    public SyntheticOrders(long seed, Security security, Broker broker, Shareholder shareholder) {
+        this.random = new SplittableRandom(seed);
+        this.security = security;
+        this.broker = broker;
+        this.shareholder = shareholder;
+    }
+
+    public static Broker richBroker(long brokerId) {
+        return Broker.builder().brokerId(brokerId).credit(Long.MAX_VALUE / 4).build();
+    }
+
+    public static Shareholder shareholderOf(long shareholderId, Security security) {
+        Shareholder shareholder = Shareholder.builder().shareholderId(shareholderId).build();
+        shareholder.incPosition(security, Integer.MAX_VALUE / 2);
+        return shareholder;
+    }
+
+    private LocalDateTime nextEntryTime() {
+        return start.plusNanos(nextOrderId * 1_000);
+    }
+
+    public Order limit(Side side, int quantity, int price) {
+        Order order = new Order(nextOrderId, security, side, quantity, price, broker, shareholder, nextEntryTime(),
+                OrderStatus.NEW, 0, nextOrderId);
+        nextOrderId++;
+        return order;
+    }
+
+    public StopLimitOrder stopLimit(Side side, int quantity, int price, int stopPrice) {
+        StopLimitOrder order = new StopLimitOrder(nextOrderId, security, side, quantity, price, broker, shareholder,
+                nextEntryTime(), stopPrice, OrderStatus.NEW);
+        nextOrderId++;
+        return order;
+    }
+
+    public int price(int lowest, int range) {
+        return lowest + random.nextInt(range);
+    }
+
+    public int quantity(int max) {
+        return 1 + random.nextInt(max);
+    }
+
+    /**
+     * {@code count} orders of one side with prices drawn uniformly from
+     * {@code [lowest, lowest + range)} and quantities from {@code [1, maxQuantity]}.
+     */
+    public List<Order> side(Side side, int count, int lowest, int range, int maxQuantity) {
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            orders.add(limit(side, quantity(maxQuantity), price(lowest, range)));
+        return orders;
+    }
+
+    /**
+     * A continuous book of {@code depth} orders per side around
+     * {@code midPrice}, buys strictly below and sells at or above it.
+     */
+    public void fillBook(OrderBook orderBook, int depth, int midPrice, int range, int maxQuantity) {
+        side(Side.BUY, depth, midPrice - range, range, maxQuantity).forEach(orderBook::enqueue);
+        side(Side.SELL, depth, midPrice, range, maxQuantity).forEach(orderBook::enqueue);
+    }
+}
@@ -0,0 +1,97 @@
+package ir.ramtung.tinyme.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.BinaryCodec;
+import ir.ramtung.tinyme.messaging.TradeDTO;
+import ir.ramtung.tinyme.messaging.event.OrderExecutedEvent;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding an order entry request and an execution event with
+ * {@code trades} trades, in JSON the way the Jackson message converter does it
+ * and in the {@link BinaryCodec} form. The size of each encoded message is
+ * printed when a trial starts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WireCodecBenchmark {
+    @Param({"0", "10"})
+    int trades;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private EnterOrderRq request;
+    private OrderExecutedEvent event;
+    private byte[] requestJson;
+    private byte[] requestBinary;
+    private byte[] eventJson;
+    private byte[] eventBinary;
+
+    @Setup(Level.Trial)
+    public void buildMessages() throws Exception {
+        request = EnterOrderRq.createNewOrderRq(1, "IRO1BENCH0001", 11, LocalDateTime.now(), Side.BUY, 300, 15_450,
+                7, 8, 0, 0);
+        List<TradeDTO> tradeList = new ArrayList<>();
+        for (int i = 0; i < trades; i++)
+            tradeList.add(new TradeDTO("IRO1BENCH0001", 15_450 - i, 10, 11, 100 + i));
+        event = new OrderExecutedEvent(1, 11, tradeList);
+        requestJson = objectMapper.writeValueAsBytes(request);
+        requestBinary = BinaryCodec.encode(request);
+        eventJson = objectMapper.writeValueAsBytes(event);
+        eventBinary = BinaryCodec.encode(event);
+        System.out.printf("%nBytes on the wire with %d trades: request JSON %d, binary %d; event JSON %d, binary %d%n",
+                trades, requestJson.length, requestBinary.length, eventJson.length, eventBinary.length);
+    }
+
+    @Benchmark
+    public byte[] encodeRequestJson() throws Exception {
+        return objectMapper.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public byte[] encodeRequestBinary() {
+        return BinaryCodec.encode(request);
+    }
+
+    @Benchmark
+    public Object decodeRequestJson() throws Exception {
+        return objectMapper.readValue(requestJson, EnterOrderRq.class);
+    }
+
+    @Benchmark
+    public Object decodeRequestBinary() {
+        return BinaryCodec.decode(requestBinary);
+    }
+
+    @Benchmark
+    public byte[] encodeEventJson() throws Exception {
+        return objectMapper.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public byte[] encodeEventBinary() {
+        return BinaryCodec.encode(event);
+    }
+
+    @Benchmark
+    public Object decodeEventJson() throws Exception {
+        return objectMapper.readValue(eventJson, OrderExecutedEvent.class);
+    }
+
+    @Benchmark
+    public Object decodeEventBinary() {
+        return BinaryCodec.decode(eventBinary);
+    }
+}
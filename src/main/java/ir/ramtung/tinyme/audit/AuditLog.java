@@ -0,0 +1,243 @@
+package ir.ramtung.tinyme.audit;
+
+import ir.ramtung.tinyme.messaging.BinaryCodec;
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.request.Request;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Audit trail of the requests received and the events published. Recording
+ * a message only queues a reference to it, so neither formatting nor I/O
+ * happens on the receiving or matching threads; the audit writer thread logs
+ * it as text and appends it to the binary audit log.
+ * <p>
+ * Text logging goes through this class's logger at {@code INFO} and logs one
+ * message in every {@code audit.sampleRate}, or none when it is 0 or the
+ * logger is not at {@code INFO}. The binary audit log at {@code audit.path}
+ * keeps every message; each record is its length, the direction, the time in
+ * milliseconds and the message in the {@link BinaryCodec} form. When the
+ * queue is full, messages are dropped from the audit trail and counted, so
+ * auditing never holds matching up.
+ */
+@Component
+public class AuditLog implements SmartLifecycle {
+    public enum Direction {
+        RECEIVED, PUBLISHED
+    }
+
+    public record AuditRecord(Direction direction, long timeMillis, Object message) {
+    }
+
+    private record Entry(Direction direction, long timeMillis, Object message, boolean text) {
+    }
+
+    private static final Entry STOP = new Entry(null, 0, null, false);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final Path path;
+    private final int sampleRate;
+    private final BlockingQueue<Entry> pending;
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private Thread writer;
+    private volatile boolean running;
+
+    public AuditLog(@Value("${audit.path:}") String path, @Value("${audit.sampleRate:1}") int sampleRate,
+            @Value("${audit.capacity:65536}") int capacity) {
+        this.path = path.isEmpty() ? null : Path.of(path);
+        this.sampleRate = sampleRate;
+        this.pending = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public void received(Request request) {
+        record(Direction.RECEIVED, request);
+    }
+
+    public void published(Event event) {
+        record(Direction.PUBLISHED, event);
+    }
+
+    /**
+     * The number of messages left out of the audit trail because its queue
+     * was full.
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    private boolean sampled() {
+        return sampleRate > 0 && log.isLoggable(Level.INFO)
+                && (sampleRate == 1 || sequence.getAndIncrement() % sampleRate == 0);
+    }
+
+    private void record(Direction direction, Object message) {
+        boolean text = sampled();
+        if (writer == null) {
+            if (text)
+                logText(direction, message);
+            return;
+        }
+        if (!text && path == null)
+            return;
+        if (!pending.offer(new Entry(direction, System.currentTimeMillis(), message, text)))
+            dropped.increment();
+    }
+
+    private void logText(Direction direction, Object message) {
+        log.info((direction == Direction.RECEIVED ? "Received message: " : "Published : ") + message);
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            pending.drainTo(batch);
+            int stop = batch.indexOf(STOP);
+            if (stop >= 0) {
+                batch.subList(stop, batch.size()).clear();
+                stopping = true;
+            }
+            try {
+                for (Entry entry : batch) {
+                    if (entry.text())
+                        logText(entry.direction(), entry.message());
+                    if (channel != null)
+                        append(entry);
+                }
+                flush();
+            } catch (IOException | RuntimeException ex) {
+                buffer.clear();
+                log.log(Level.SEVERE, "Could not write " + batch.size() + " audit records", ex);
+            }
+            batch.clear();
+        }
+    }
+
+    private void append(Entry entry) throws IOException {
+        while (true) {
+            int start = buffer.position();
+            try {
+                buffer.putInt(0);
+                buffer.put((byte) entry.direction().ordinal());
+                buffer.putLong(entry.timeMillis());
+                BinaryCodec.encode(entry.message(), buffer);
+                buffer.putInt(start, buffer.position() - start - Integer.BYTES);
+                return;
+            } catch (BufferOverflowException ex) {
+                buffer.position(start);
+                if (start > 0)
+                    flush();
+                else
+                    buffer = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        if (channel == null)
+            return;
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Reads the records of a binary audit log in order, stopping at an
+     * incomplete record at its end.
+     */
+    public static void read(Path path, Consumer<AuditRecord> consumer) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+        while (in.remaining() >= Integer.BYTES) {
+            int length = in.getInt(in.position());
+            if (length < 0 || in.remaining() - Integer.BYTES < length)
+                return;
+            in.position(in.position() + Integer.BYTES);
+            int end = in.position() + length;
+            Direction direction = Direction.values()[in.get()];
+            long timeMillis = in.getLong();
+            consumer.accept(new AuditRecord(direction, timeMillis, BinaryCodec.decode(in)));
+            in.position(end);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (path != null) {
+            try {
+                Files.createDirectories(path.toAbsolutePath().getParent());
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Could not open the audit log " + path, ex);
+            }
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        writer = new Thread(this::writeLoop, "audit-writer");
+        writer.start();
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Thread stopped = writer;
+        if (stopped == null)
+            return;
+        writer = null;
+        try {
+            pending.put(STOP);
+            stopped.join();
+            if (channel != null) {
+                channel.force(false);
+                channel.close();
+                channel = null;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            log.log(Level.WARNING, "Could not close the audit log", ex);
+        }
+        if (dropped() > 0)
+            log.warning(dropped() + " messages were left out of the audit trail");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 5;
+    }
+}
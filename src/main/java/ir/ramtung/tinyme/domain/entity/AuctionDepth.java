@@ -0,0 +1,284 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.util.SplittableRandom;
+
+/**
+ * Cumulative buy and sell depth of an order book, kept up to date as orders
+ * enter and leave the book so that the indicative opening price of an auction
+ * can be found without walking the orders.
+ * <p>
+ * Price levels of both sides are held in a treap keyed by price where every
+ * node also carries the buy and sell quantity of its subtree. Updating a level
+ * and every query below are therefore O(log L) in the number of levels.
+ * <p>
+ * With {@code D(p)} the buy quantity at or above {@code p} and {@code S(p)} the
+ * sell quantity at or below it, the tradable quantity {@code min(D(p), S(p))}
+ * rises up to the point where the curves cross and falls after it. The prices
+ * reaching the highest quantity hence form one interval, and the opening
+ * price is the point of that interval closest to the last trade price. Only
+ * order limits and multiples of the tick size are considered, so the price
+ * found never lies off the tick grid.
+ */
+public class AuctionDepth {
+    private static final class Node {
+        final int price;
+        final int priority;
+        long buyQuantity;
+        long sellQuantity;
+        int orders;
+        long buySum;
+        long sellSum;
+        Node left;
+        Node right;
+
+        private Node(int price, int priority) {
+            this.price = price;
+            this.priority = priority;
+        }
+    }
+
+    private enum Curve { BUY, SELL, BOTH }
+
+    private final SplittableRandom random = new SplittableRandom();
+    private Node root;
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public long totalQuantity(Side side) {
+        return sum(root, side == Side.BUY ? Curve.BUY : Curve.SELL);
+    }
+
+    /**
+     * The quantity resting on {@code side} that an order on the other side
+     * limited to {@code price} can trade with: sells at or below the price, or
+     * buys at or above it.
+     */
+    public long quantityCrossing(Side side, int price) {
+        if (side == Side.SELL)
+            return quantityUpTo(price, Curve.SELL);
+        long below = price == Integer.MIN_VALUE ? 0 : quantityUpTo(price - 1, Curve.BUY);
+        return totalQuantity(Side.BUY) - below;
+    }
+
+    void add(Side side, int price, long quantityDelta, int ordersDelta) {
+        root = add(root, side, price, quantityDelta, ordersDelta);
+    }
+
+    private Node add(Node node, Side side, int price, long quantityDelta, int ordersDelta) {
+        if (node == null) {
+            node = new Node(price, random.nextInt());
+            apply(node, side, quantityDelta, ordersDelta);
+            return pull(node);
+        }
+        if (price < node.price) {
+            node.left = add(node.left, side, price, quantityDelta, ordersDelta);
+            if (node.left != null && node.left.priority > node.priority)
+                return rotateRight(node);
+        } else if (price > node.price) {
+            node.right = add(node.right, side, price, quantityDelta, ordersDelta);
+            if (node.right != null && node.right.priority > node.priority)
+                return rotateLeft(node);
+        } else {
+            apply(node, side, quantityDelta, ordersDelta);
+            if (node.orders == 0)
+                return merge(node.left, node.right);
+        }
+        return pull(node);
+    }
+
+    private static void apply(Node node, Side side, long quantityDelta, int ordersDelta) {
+        if (side == Side.BUY)
+            node.buyQuantity += quantityDelta;
+        else
+            node.sellQuantity += quantityDelta;
+        node.orders += ordersDelta;
+    }
+
+    private static Node pull(Node node) {
+        node.buySum = node.buyQuantity + sum(node.left, Curve.BUY) + sum(node.right, Curve.BUY);
+        node.sellSum = node.sellQuantity + sum(node.left, Curve.SELL) + sum(node.right, Curve.SELL);
+        return node;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = pull(node);
+        return pull(left);
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = pull(node);
+        return pull(right);
+    }
+
+    private static Node merge(Node lower, Node upper) {
+        if (lower == null)
+            return upper;
+        if (upper == null)
+            return lower;
+        if (lower.priority > upper.priority) {
+            lower.right = merge(lower.right, upper);
+            return pull(lower);
+        }
+        upper.left = merge(lower, upper.left);
+        return pull(upper);
+    }
+
+    private static long sum(Node node, Curve curve) {
+        if (node == null)
+            return 0;
+        return switch (curve) {
+            case BUY -> node.buySum;
+            case SELL -> node.sellSum;
+            case BOTH -> node.buySum + node.sellSum;
+        };
+    }
+
+    private static long own(Node node, Curve curve) {
+        return switch (curve) {
+            case BUY -> node.buyQuantity;
+            case SELL -> node.sellQuantity;
+            case BOTH -> node.buyQuantity + node.sellQuantity;
+        };
+    }
+
+    private long quantityUpTo(int price, Curve curve) {
+        long total = 0;
+        Node node = root;
+        while (node != null) {
+            if (price < node.price) {
+                node = node.left;
+            } else {
+                total += sum(node.left, curve) + own(node, curve);
+                if (price == node.price)
+                    break;
+                node = node.right;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * The lowest level at which the quantity of {@code curve} accumulated from
+     * the lowest price reaches {@code target}, which must be positive.
+     */
+    private Node lowestReaching(long target, Curve curve) {
+        long before = 0;
+        Node node = root;
+        while (node != null) {
+            long left = sum(node.left, curve);
+            if (before + left >= target) {
+                node = node.left;
+            } else if (before + left + own(node, curve) >= target) {
+                return node;
+            } else {
+                before += left + own(node, curve);
+                node = node.right;
+            }
+        }
+        return null;
+    }
+
+    private int lowestPrice() {
+        Node node = root;
+        while (node.left != null)
+            node = node.left;
+        return node.price;
+    }
+
+    private int highestPrice() {
+        Node node = root;
+        while (node.right != null)
+            node = node.right;
+        return node.price;
+    }
+
+    private Node floor(int price) {
+        Node found = null;
+        Node node = root;
+        while (node != null) {
+            if (node.price <= price) {
+                found = node;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return found;
+    }
+
+    private Node ceiling(int price) {
+        Node found = null;
+        Node node = root;
+        while (node != null) {
+            if (node.price >= price) {
+                found = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return found;
+    }
+
+    private long highestTradableQuantity() {
+        long totalBuy = sum(root, Curve.BUY);
+        if (totalBuy == 0)
+            return 0;
+        Node crossing = lowestReaching(totalBuy, Curve.BOTH);
+        long buysThrough = quantityUpTo(crossing.price, Curve.BUY);
+        long sellsThrough = quantityUpTo(crossing.price, Curve.SELL);
+        long buysBelow = buysThrough - crossing.buyQuantity;
+        if (sellsThrough + buysBelow >= totalBuy) {
+            long quantity = totalBuy - buysBelow;
+            if (crossing.price > lowestPrice())
+                quantity = Math.max(quantity, sellsThrough - crossing.sellQuantity);
+            return quantity;
+        }
+        if (crossing.price < highestPrice())
+            return Math.max(totalBuy - buysThrough, sellsThrough);
+        return sum(root, Curve.SELL);
+    }
+
+    /**
+     * The limit or tick multiple in {@code [lowest, highest]} closest to
+     * {@code target}, preferring the lower one on equal distance. Both bounds
+     * are order limits.
+     */
+    private int closestCandidate(int lowest, int highest, int target, int tickSize) {
+        if (target <= lowest)
+            return lowest;
+        if (target >= highest)
+            return highest;
+        int tickBelow = Math.floorDiv(target, tickSize) * tickSize;
+        int below = Math.max(tickBelow, floor(target).price);
+        if (below == target)
+            return target;
+        int tickAbove = tickBelow + tickSize;
+        int above = tickAbove <= highest ? Math.min(tickAbove, ceiling(target).price) : ceiling(target).price;
+        return target - below <= above - target ? below : above;
+    }
+
+    /**
+     * The price maximizing the traded quantity if the auction opened now, with
+     * ties going to the price closest to {@code lastTradePrice} and then to the
+     * lower price, together with that quantity. Candidate prices are the order
+     * limits and the multiples of {@code tickSize} between them. Both are zero
+     * when nothing can trade, and the result is null when the book is empty.
+     */
+    public PriceQuantity openingPrice(int lastTradePrice, int tickSize) {
+        if (root == null)
+            return null;
+        long quantity = highestTradableQuantity();
+        if (quantity == 0)
+            return new PriceQuantity(0, 0);
+        int lowest = lowestReaching(quantity, Curve.SELL).price;
+        int highest = lowestReaching(sum(root, Curve.BUY) - quantity + 1, Curve.BUY).price;
+        return new PriceQuantity(closestCandidate(lowest, highest, lastTradePrice, tickSize), (int) quantity);
+    }
+}
@@ -5,29 +5,116 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 
-@ToString
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A broker and its credit ledger. The ledger is lock-free: credit flowing in
+ * is added to a striped counter so that many sellers of a busy broker do not
+ * contend, while debits are applied to a base balance with compare-and-set.
+ * Incoming credit only ever grows the striped total, so a debit that checks
+ * the balance against a stale sum can never overdraw the broker.
+ * <p>
+ * Credit that must be held until a match either completes or is rolled back
+ * is reserved, and later committed or released exactly once. A trade keeps
+ * its reservation itself through {@link #tryReserveCredit(long)}; other
+ * holders take a {@link CreditReservation}.
+ * <p>
+ * Credit checks made while a request runs under {@link CreditDecisions}
+ * follow and record its outcomes, so a replayed request gets the answers it
+ * got when it arrived whatever the other shards were doing then.
+ */
+@ToString(onlyExplicitlyIncluded = true)
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
-@Builder
 public class Broker {
     @Getter
+    @ToString.Include
     @EqualsAndHashCode.Include
-    private long brokerId;
-    @Getter
-    private String name;
+    private final long brokerId;
     @Getter
-    private long credit;
+    @ToString.Include
+    private final String name;
+    private final AtomicLong balance;
+    private final LongAdder deposits;
+    private final LongAdder reserved;
+
+    @Builder
+    private Broker(long brokerId, String name, long credit) {
+        this.brokerId = brokerId;
+        this.name = name;
+        this.balance = new AtomicLong(credit);
+        this.deposits = new LongAdder();
+        this.reserved = new LongAdder();
+    }
+
+    @ToString.Include
+    public long getCredit() {
+        return balance.get() + deposits.sum();
+    }
+
+    public long getReservedCredit() {
+        return reserved.sum();
+    }
 
     public void increaseCreditBy(long amount) {
         assert amount >= 0;
-        credit += amount;
+        deposits.add(amount);
     }
 
     public void decreaseCreditBy(long amount) {
         assert amount >= 0;
-        credit -= amount;
+        balance.addAndGet(-amount);
     }
 
     public boolean hasEnoughCredit(long amount) {
-        return credit >= amount;
+        CreditDecisions decisions = CreditDecisions.current();
+        if (decisions != null && decisions.hasNext())
+            return decisions.next();
+        boolean enough = getCredit() >= amount;
+        if (decisions != null)
+            decisions.add(enough);
+        return enough;
+    }
+
+    public boolean tryDecreaseCreditBy(long amount) {
+        assert amount >= 0;
+        CreditDecisions decisions = CreditDecisions.current();
+        if (decisions != null && decisions.hasNext()) {
+            boolean decreased = decisions.next();
+            if (decreased)
+                balance.addAndGet(-amount);
+            return decreased;
+        }
+        boolean decreased = decreaseIfEnough(amount);
+        if (decisions != null)
+            decisions.add(decreased);
+        return decreased;
+    }
+
+    private boolean decreaseIfEnough(long amount) {
+        while (true) {
+            long current = balance.get();
+            if (current + deposits.sum() < amount)
+                return false;
+            if (balance.compareAndSet(current, current - amount))
+                return true;
+        }
+    }
+
+    public boolean tryReserveCredit(long amount) {
+        if (!tryDecreaseCreditBy(amount))
+            return false;
+        reserved.add(amount);
+        return true;
+    }
+
+    public CreditReservation reserveCredit(long amount) {
+        return tryReserveCredit(amount) ? new CreditReservation(this, amount) : null;
+    }
+
+    void settleReservation(long amount, boolean refund) {
+        reserved.add(-amount);
+        if (refund)
+            increaseCreditBy(amount);
     }
 }
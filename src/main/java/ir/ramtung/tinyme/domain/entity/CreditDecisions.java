@@ -0,0 +1,75 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.util.BitSet;
+
+/**
+ * The outcomes of the credit checks a request made, in the order it made
+ * them. Brokers are shared by all matching shards, so whether a broker had
+ * enough credit for a request can depend on what other shards did at the same
+ * time. While a request runs with {@link #apply(Runnable)}, {@link Broker}
+ * follows the outcomes already in here and records the ones it decides, so
+ * the outcomes recorded when a request arrived can be followed when it is
+ * replayed.
+ */
+public final class CreditDecisions {
+    private static final ThreadLocal<CreditDecisions> current = new ThreadLocal<>();
+    private final BitSet outcomes;
+    private int size;
+    private int next;
+
+    public CreditDecisions() {
+        this(new BitSet(), 0);
+    }
+
+    private CreditDecisions(BitSet outcomes, int size) {
+        this.outcomes = outcomes;
+        this.size = size;
+    }
+
+    public static CreditDecisions valueOf(byte[] bytes, int size) {
+        return new CreditDecisions(BitSet.valueOf(bytes), size);
+    }
+
+    static CreditDecisions current() {
+        return current.get();
+    }
+
+    public void apply(Runnable work) {
+        CreditDecisions outer = current.get();
+        current.set(this);
+        next = 0;
+        try {
+            work.run();
+        } finally {
+            if (outer == null)
+                current.remove();
+            else
+                current.set(outer);
+        }
+    }
+
+    boolean hasNext() {
+        return next < size;
+    }
+
+    boolean next() {
+        return outcomes.get(next++);
+    }
+
+    void add(boolean outcome) {
+        outcomes.set(size, outcome);
+        next = ++size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public byte[] toByteArray() {
+        return outcomes.toByteArray();
+    }
+}
@@ -0,0 +1,34 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Credit taken out of a broker's available credit by
+ * {@link Broker#reserveCredit(long)}. Committing keeps the credit spent and
+ * releasing gives it back; whichever comes first wins and later calls have no
+ * effect, so a rollback can never refund the same credit twice.
+ */
+public class CreditReservation {
+    @Getter
+    private final Broker broker;
+    @Getter
+    private final long amount;
+    private final AtomicBoolean settled = new AtomicBoolean();
+
+    CreditReservation(Broker broker, long amount) {
+        this.broker = broker;
+        this.amount = amount;
+    }
+
+    public void commit() {
+        if (settled.compareAndSet(false, true))
+            broker.settleReservation(amount, false);
+    }
+
+    public void release() {
+        if (settled.compareAndSet(false, true))
+            broker.settleReservation(amount, true);
+    }
+}
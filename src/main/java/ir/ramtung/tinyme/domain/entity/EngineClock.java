@@ -0,0 +1,54 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time and sequence as the engine sees them. Times are nanoseconds since the
+ * epoch of the local wall clock, read once at startup and advanced with
+ * {@link System#nanoTime()} from then on, so they never go backwards and are
+ * read without allocating. Sequence numbers are handed out in a single
+ * increasing order for the whole engine, which gives orders a total order
+ * that does not depend on the clock. {@link LocalDateTime} is only made from
+ * these values when they leave the engine.
+ */
+public final class EngineClock {
+    public static final long NO_TIME = Long.MIN_VALUE;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long ORIGIN_NANOS = toNanos(LocalDateTime.now());
+    private static final long ORIGIN_TICKS = System.nanoTime();
+    private static final AtomicLong lastSequence = new AtomicLong();
+
+    private EngineClock() {
+    }
+
+    public static long nanoTime() {
+        return ORIGIN_NANOS + (System.nanoTime() - ORIGIN_TICKS);
+    }
+
+    public static long nextSequence() {
+        return lastSequence.incrementAndGet();
+    }
+
+    /**
+     * Makes the sequence numbers handed out from now on follow
+     * {@code sequence}, such as that of an order restored from a snapshot.
+     */
+    public static void skipPast(long sequence) {
+        lastSequence.accumulateAndGet(sequence, Math::max);
+    }
+
+    public static long toNanos(LocalDateTime time) {
+        if (time == null)
+            return NO_TIME;
+        return time.toEpochSecond(ZoneOffset.UTC) * NANOS_PER_SECOND + time.getNano();
+    }
+
+    public static LocalDateTime toLocalDateTime(long nanos) {
+        if (nanos == NO_TIME)
+            return null;
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, NANOS_PER_SECOND),
+                (int) Math.floorMod(nanos, NANOS_PER_SECOND), ZoneOffset.UTC);
+    }
+}
@@ -3,6 +3,7 @@ package ir.ramtung.tinyme.domain.entity;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.ToString;
 
 import java.time.LocalDateTime;
@@ -12,6 +13,7 @@ import java.time.LocalDateTime;
 @ToString(callSuper = true)
 public class IcebergOrder extends Order {
     int peakSize;
+    @Setter
     int displayedQuantity;
 
     public IcebergOrder(long orderId, Security security, Side side, int quantity, int price, Broker broker,
@@ -46,13 +48,13 @@ public class IcebergOrder extends Order {
     @Override
     public Order snapshot() {
         return new IcebergOrder(orderId, security, side, quantity, price, broker, shareholder, entryTime, peakSize,
-                OrderStatus.SNAPSHOT, minimumExecutionQuantity);
+                OrderStatus.SNAPSHOT, minimumExecutionQuantity).stampedLike(this);
     }
 
     @Override
     public Order snapshotWithQuantity(int newQuantity) {
         return new IcebergOrder(orderId, security, side, newQuantity, price, broker, shareholder, entryTime, peakSize,
-                OrderStatus.SNAPSHOT, minimumExecutionQuantity);
+                OrderStatus.SNAPSHOT, minimumExecutionQuantity).stampedLike(this);
     }
 
     @Override
@@ -74,6 +76,13 @@ public class IcebergOrder extends Order {
         displayedQuantity -= amount;
     }
 
+    @Override
+    public void restoreQuantity(int totalQuantity, int quantity) {
+        super.restoreQuantity(totalQuantity, quantity);
+        if (status != OrderStatus.NEW)
+            displayedQuantity = quantity;
+    }
+
     public void replenish() {
         displayedQuantity = Math.min(quantity, peakSize);
     }
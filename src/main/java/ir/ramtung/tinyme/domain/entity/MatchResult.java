@@ -1,43 +1,41 @@
 package ir.ramtung.tinyme.domain.entity;
 
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Objects;
 
 public final class MatchResult {
     private final MatchingOutcome outcome;
     private final Order remainder;
-    private final LinkedList<Trade> trades;
+    private final TradeBuffer trades;
 
-    public static MatchResult executed(Order remainder, List<Trade> trades) {
-        return new MatchResult(MatchingOutcome.EXECUTED, remainder, new LinkedList<>(trades));
+    public static MatchResult executed(Order remainder, TradeBuffer trades) {
+        return new MatchResult(MatchingOutcome.EXECUTED, remainder, trades);
     }
 
     public static MatchResult notEnoughCredit() {
-        return new MatchResult(MatchingOutcome.NOT_ENOUGH_CREDIT, null, new LinkedList<>());
+        return new MatchResult(MatchingOutcome.NOT_ENOUGH_CREDIT, null, new TradeBuffer());
     }
 
     public static MatchResult notEnoughPositions() {
-        return new MatchResult(MatchingOutcome.NOT_ENOUGH_POSITIONS, null, new LinkedList<>());
+        return new MatchResult(MatchingOutcome.NOT_ENOUGH_POSITIONS, null, new TradeBuffer());
     }
 
     public static MatchResult notEnoughQuantitiesMatched() {
-        return new MatchResult(MatchingOutcome.NOT_ENOUGH_QUANTITIES_MATCHED, null, new LinkedList<>());
+        return new MatchResult(MatchingOutcome.NOT_ENOUGH_QUANTITIES_MATCHED, null, new TradeBuffer());
     }
 
     public static MatchResult inactiveOrderEnqueued() {
-        return new MatchResult(MatchingOutcome.INACTIVE_ORDER_ENQUEUED, null, new LinkedList<>());
+        return new MatchResult(MatchingOutcome.INACTIVE_ORDER_ENQUEUED, null, new TradeBuffer());
     }
 
     public static MatchResult orderEnqueuedAuction() {
-        return new MatchResult(MatchingOutcome.ORDER_ENQUEUED_IN_AUCTION_MODE, null, new LinkedList<>());
+        return new MatchResult(MatchingOutcome.ORDER_ENQUEUED_IN_AUCTION_MODE, null, new TradeBuffer());
     }
 
-    public static MatchResult traded(List<Trade> trades) {
-        return new MatchResult(MatchingOutcome.TRADED, null, new LinkedList<>(trades));
+    public static MatchResult traded(TradeBuffer trades) {
+        return new MatchResult(MatchingOutcome.TRADED, null, trades);
     }
 
-    private MatchResult(MatchingOutcome outcome, Order remainder, LinkedList<Trade> trades) {
+    private MatchResult(MatchingOutcome outcome, Order remainder, TradeBuffer trades) {
         this.outcome = outcome;
         this.remainder = remainder;
         this.trades = trades;
@@ -51,7 +49,7 @@ public final class MatchResult {
         return remainder;
     }
 
-    public LinkedList<Trade> trades() {
+    public TradeBuffer trades() {
         return trades;
     }
 
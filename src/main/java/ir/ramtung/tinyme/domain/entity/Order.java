@@ -1,14 +1,12 @@
 package ir.ramtung.tinyme.domain.entity;
 
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
-import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 
 import java.time.LocalDateTime;
 
-@Builder
 @EqualsAndHashCode
 @ToString
 @Getter
@@ -20,12 +18,13 @@ public class Order {
     protected int price;
     protected Broker broker;
     protected Shareholder shareholder;
-    @Builder.Default
-    protected LocalDateTime entryTime = LocalDateTime.now();
-    @Builder.Default
-    protected OrderStatus status = OrderStatus.NEW;
+    protected LocalDateTime entryTime;
+    protected OrderStatus status;
     protected int minimumExecutionQuantity;
     protected long requestId;
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    protected long sequence;
 
     public Order(long orderId, Security security, Side side, int quantity, int price, Broker broker,
             Shareholder shareholder, LocalDateTime entryTime, OrderStatus status, int minimumExecutionQuantity,
@@ -63,12 +62,27 @@ public class Order {
 
     public Order snapshot() {
         return new Order(orderId, security, side, quantity, price, broker, shareholder, entryTime, OrderStatus.SNAPSHOT,
-                minimumExecutionQuantity);
+                minimumExecutionQuantity).stampedLike(this);
     }
 
     public Order snapshotWithQuantity(int newQuantity) {
         return new Order(orderId, security, side, newQuantity, price, broker, shareholder, entryTime,
-                OrderStatus.SNAPSHOT, minimumExecutionQuantity);
+                OrderStatus.SNAPSHOT, minimumExecutionQuantity).stampedLike(this);
+    }
+
+    /**
+     * Gives the order the sequence number its request was accepted with.
+     * Orders that were never stamped, such as ones loaded from the saved
+     * order books, keep sequence 0 and so rank before every order accepted
+     * after them.
+     */
+    public void stamp(long sequence) {
+        this.sequence = sequence;
+    }
+
+    protected Order stampedLike(Order order) {
+        stamp(order.sequence);
+        return this;
     }
 
     public boolean matches(Order other) {
@@ -84,6 +98,10 @@ public class Order {
         quantity -= amount;
     }
 
+    public void restoreQuantity(int totalQuantity, int quantity) {
+        this.quantity = totalQuantity;
+    }
+
     public void makeQuantityZero() {
         quantity = 0;
     }
@@ -105,20 +123,18 @@ public class Order {
     }
 
     private boolean compareBuyOrder(Order order) {
-        int entryCompareResult = entryTime.compareTo(order.getEntryTime());
         if (getStopPrice() < order.getStopPrice())
             return true;
         if (getStopPrice() == order.getStopPrice())
-            return entryCompareResult < 0;
+            return sequence < order.getSequence();
         return false;
     }
 
     private boolean compareSellOrder(Order order) {
-        int entryCompareResult = entryTime.compareTo(order.getEntryTime());
         if (getStopPrice() > order.getStopPrice())
             return true;
         if (getStopPrice() == order.getStopPrice())
-            return entryCompareResult < 0;
+            return sequence < order.getSequence();
         return false;
     }
 
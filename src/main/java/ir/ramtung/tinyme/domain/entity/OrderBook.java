@@ -2,135 +2,129 @@ package ir.ramtung.tinyme.domain.entity;
 
 import lombok.Getter;
 
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.function.Predicate;
-import java.util.Iterator;
+import java.util.Map;
 
 @Getter
 public class OrderBook {
-    private final LinkedList<Order> buyQueue;
-    private final LinkedList<Order> sellQueue;
-    private LinkedList<Order> activeStopLimitOrders;
-    private LinkedList<Order> inactiveBuyStopLimitOrders;
-    private LinkedList<Order> inactiveSellStopLimitOrders;
+    private final AuctionDepth auctionDepth;
+    private final OrderQueue buyQueue;
+    private final OrderQueue sellQueue;
+    private final StopTriggerBook inactiveBuyStopLimitOrders;
+    private final StopTriggerBook inactiveSellStopLimitOrders;
+    private final Map<Long, Integer> inactiveSellQuantityById;
+    private final Map<Shareholder, Long> committedSellQuantityByShareholder;
 
     private double lastTradePrice;
 
     public OrderBook() {
-        buyQueue = new LinkedList<>();
-        sellQueue = new LinkedList<>();
-        activeStopLimitOrders = new LinkedList<>();
-        inactiveBuyStopLimitOrders = new LinkedList<>();
-        inactiveSellStopLimitOrders = new LinkedList<>();
-    }
-
-    private void enqueueOrder(Order order, List<Order> queue) {
-        ListIterator<Order> it = queue.listIterator();
-        while (it.hasNext()) {
-            if (order.queuesBefore(it.next())) {
-                it.previous();
-                break;
-            }
-        }
-        order.queue();
-        it.add(order);
+        auctionDepth = new AuctionDepth();
+        buyQueue = new PriceLevelOrderQueue(Side.BUY, this::quantityChanged);
+        sellQueue = new PriceLevelOrderQueue(Side.SELL, this::quantityChanged);
+        inactiveBuyStopLimitOrders = new StopTriggerBook(Side.BUY);
+        inactiveSellStopLimitOrders = new StopTriggerBook(Side.SELL);
+        inactiveSellQuantityById = new HashMap<>();
+        committedSellQuantityByShareholder = new HashMap<>();
     }
 
-    public void enqueue(Order order) {
-        List<Order> queue = getQueue(order.getSide());
-        enqueueOrder(order, queue);
+    private void quantityChanged(Order order, int price, long quantityDelta, int ordersDelta) {
+        auctionDepth.add(order.getSide(), price, quantityDelta, ordersDelta);
+        if (order.getSide() == Side.SELL)
+            addCommittedSellQuantity(order.getShareholder(), quantityDelta);
     }
 
-    public void stopLimitOrderEnqueue(StopLimitOrder stopLimitOrder) {
-        List<Order> queue = getInactiveStopLimitOrdersQueue(stopLimitOrder.getSide());
-        enqueueOrder(stopLimitOrder, queue);
+    private void addCommittedSellQuantity(Shareholder shareholder, long quantityDelta) {
+        if (quantityDelta != 0)
+            committedSellQuantityByShareholder.merge(shareholder, quantityDelta,
+                    (total, delta) -> total + delta == 0 ? null : total + delta);
     }
 
-    public void activeStopLimitOrderEnqueue(Order stopLimitOrder) {
-        enqueueOrder(stopLimitOrder, activeStopLimitOrders);
+    public void enqueue(Order order) {
+        getQueue(order.getSide()).enqueue(order);
     }
 
-    public LinkedList<Order> getQueue(Side side) { // changed
+    public OrderQueue getQueue(Side side) {
         return side == Side.BUY ? buyQueue : sellQueue;
     }
 
-    private LinkedList<Order> getInactiveStopLimitOrdersQueue(Side side) {
-        if (side == Side.BUY) {
-            return inactiveBuyStopLimitOrders;
-        } else {
-            return inactiveSellStopLimitOrders;
+    public LinkedList<Order> getBuyQueue() {
+        return new LinkedList<>(buyQueue.toList());
+    }
+
+    public LinkedList<Order> getSellQueue() {
+        return new LinkedList<>(sellQueue.toList());
+    }
+
+    public StopTriggerBook getInactiveStopLimitOrders(Side side) {
+        return side == Side.BUY ? inactiveBuyStopLimitOrders : inactiveSellStopLimitOrders;
+    }
+
+    private void countInactiveSellOrder(Order order) {
+        if (order.getSide() == Side.SELL) {
+            inactiveSellQuantityById.put(order.getOrderId(), order.getTotalQuantity());
+            addCommittedSellQuantity(order.getShareholder(), order.getTotalQuantity());
         }
     }
 
+    private void uncountInactiveSellOrder(Order order) {
+        if (order.getSide() == Side.SELL)
+            addCommittedSellQuantity(order.getShareholder(), -inactiveSellQuantityById.remove(order.getOrderId()));
+    }
+
     public Order findByOrderId(Side side, long orderId) {
-        var queue = getQueue(side);
-        for (Order order : queue) {
-            if (order.getOrderId() == orderId)
-                return order;
-        }
-        return null;
+        return getQueue(side).findByOrderId(orderId);
     }
 
     public Order findInActiveByOrderId(Side side, long orderId) {
-        var queue = getInactiveStopLimitOrdersQueue(side);
-        for (Order order : queue) {
-            if (order.getOrderId() == orderId)
-                return order;
-        }
-        return null;
+        return getInactiveStopLimitOrders(side).findByOrderId(orderId);
     }
 
     public Order dequeueNextStopLimitOrder(Side side) {
-        ListIterator<Order> it = getInactiveStopLimitOrdersQueue(side).listIterator();
-        if (it.hasNext()) {
-            Order order = it.next();
-            if (((StopLimitOrder) order).checkActivation(lastTradePrice)) {
-                it.remove();
-                return order;
-            }
-        }
-        return null;
+        Order order = getInactiveStopLimitOrders(side).pollTriggered(lastTradePrice);
+        if (order != null)
+            uncountInactiveSellOrder(order);
+        return order;
+    }
+
+    public List<Order> dequeueTriggeredStopLimitOrders(Side side) {
+        List<Order> orders = getInactiveStopLimitOrders(side).pollAllTriggered(lastTradePrice);
+        orders.forEach(this::uncountInactiveSellOrder);
+        return orders;
     }
 
     public boolean removeByOrderId(Side side, long orderId) {
-        var queue = getQueue(side);
-        var it = queue.listIterator();
-        while (it.hasNext()) {
-            if (it.next().getOrderId() == orderId) {
-                it.remove();
-                return true;
-            }
-        }
-        return false;
+        return getQueue(side).removeByOrderId(orderId);
     }
 
     public boolean removeInActiveStopLimitByOrderId(Side side, long orderId) {
-        var queue = getInactiveStopLimitOrdersQueue(side);
-        var it = queue.listIterator();
-        while (it.hasNext()) {
-            if (it.next().getOrderId() == orderId) {
-                it.remove();
-                return true;
-            }
-        }
-        return false;
+        Order order = getInactiveStopLimitOrders(side).removeByOrderId(orderId);
+        if (order == null)
+            return false;
+        uncountInactiveSellOrder(order);
+        return true;
     }
 
     public Order matchWithFirst(Order newOrder) {
-        var queue = getQueue(newOrder.getSide().opposite());
-        if (newOrder.matches(queue.getFirst()))
-            return queue.getFirst();
+        Order first = getQueue(newOrder.getSide().opposite()).first();
+        if (newOrder.matches(first))
+            return first;
         else
             return null;
     }
 
+    /**
+     * The quantity resting on the other side of the book at prices
+     * {@code order} can trade at, read off the auction depth without walking
+     * the orders.
+     */
+    public long matchableQuantity(Order order) {
+        return auctionDepth.quantityCrossing(order.getSide().opposite(), order.getPrice());
+    }
+
     public void putBack(Order order) {
-        LinkedList<Order> queue = getQueue(order.getSide());
-        order.queue();
-        queue.addFirst(order);
+        getQueue(order.getSide()).putFirst(order);
     }
 
     public void restoreSellOrder(Order sellOrder) {
@@ -143,6 +137,21 @@ public class OrderBook {
         putBack(buyOrder);
     }
 
+    /**
+     * Undoes a trade against a resting order: gives the order back its total
+     * and displayed quantities and makes it the first in its price level
+     * again. An order that is still first is updated in place.
+     */
+    public void restore(Order order, int totalQuantity, int quantity) {
+        OrderQueue queue = getQueue(order.getSide());
+        if (queue.first() != order) {
+            queue.removeByOrderId(order.getOrderId());
+            queue.putFirst(order);
+        }
+        order.restoreQuantity(totalQuantity, quantity);
+        queue.updateQuantity(order);
+    }
+
     public boolean hasOrderOfType(Side side) {
         return !getQueue(side).isEmpty();
     }
@@ -151,89 +160,63 @@ public class OrderBook {
         getQueue(side).removeFirst();
     }
 
-    private int totalQuantityByShareholder(List<Order> orders, Shareholder shareholder) {
-        return orders.stream()
-                .filter(order -> order.getShareholder().equals(shareholder))
-                .mapToInt(Order::getTotalQuantity)
-                .sum();
+    public void updateQuantity(Order order) {
+        if (findInActiveByOrderId(order.getSide(), order.getOrderId()) != order) {
+            getQueue(order.getSide()).updateQuantity(order);
+        } else if (order.getSide() == Side.SELL) {
+            int previous = inactiveSellQuantityById.put(order.getOrderId(), order.getTotalQuantity());
+            addCommittedSellQuantity(order.getShareholder(), order.getTotalQuantity() - previous);
+        }
     }
 
     public int totalSellQuantityByShareholder(Shareholder shareholder) {
-        return totalQuantityByShareholder(sellQueue, shareholder) +
-                totalQuantityByShareholder(inactiveSellStopLimitOrders, shareholder);
+        return committedSellQuantityByShareholder.getOrDefault(shareholder, 0L).intValue();
     }
 
     public void setLastTradePrice(double lastTradePrice) {
         this.lastTradePrice = lastTradePrice;
     }
 
-    private boolean shouldActivateSellOrder(Order order) {
-        return (order.getStopPrice() <= lastTradePrice && order.getSide() == Side.SELL
-                && (order instanceof StopLimitOrder));
-    }
-
-    private boolean shouldActivateBuyOrder(Order order) {
-        return (order.getStopPrice() >= lastTradePrice && order.getSide() == Side.BUY
-                && (order instanceof StopLimitOrder));
-    }
-
-    public void activateSellStopLimitOrders() {
-        Iterator<Order> iterator = inactiveSellStopLimitOrders.iterator();
-        while (iterator.hasNext()) {
-            Order order = iterator.next();
-            if (shouldActivateSellOrder(order)) {
-                ((StopLimitOrder) order).setIsActive(true);
-                iterator.remove();
-                activeStopLimitOrderEnqueue(order);
-            }
-        }
-    }
-
-    public void activateBuyStopLimitOrders() {
-        Iterator<Order> iterator = inactiveBuyStopLimitOrders.iterator();
-        while (iterator.hasNext()) {
-            Order order = iterator.next();
-            if (shouldActivateBuyOrder(order)) {
-                iterator.remove();
-                order.getBroker().increaseCreditBy(order.getPrice() * order.getQuantity());
-                ((StopLimitOrder) order).setIsActive(true);
-                activeStopLimitOrderEnqueue(order);
-            }
-        }
-    }
-
-    public List<StopLimitOrder> activateStopLimitOrders() {
-        List<StopLimitOrder> activatedOrders = new ArrayList<>();
-        if (inactiveSellStopLimitOrders.size() > 0)
-            activateSellStopLimitOrders();
-        if (inactiveBuyStopLimitOrders.size() > 0)
-            activateBuyStopLimitOrders();
-        return activatedOrders;
-    }
-
-    public void enqueueByQueue(Order order, List<Order> queue, Predicate<Order> condition) {
-        ListIterator<Order> it = queue.listIterator();
-        while (it.hasNext()) {
-            Order nexOrder = it.next();
-            if (condition.test(nexOrder)) {
-                it.previous();
-                break;
-            }
-        }
-        order.queue();
-        it.add(order);
-    }
-
     public void enqueueInactiveStopLimitOrder(Order order) {
-        List<Order> queue = getInactiveStopLimitOrdersQueue(order.getSide());
-        Predicate<Order> condition = order::inactiveOrderQueuesBefore;
-        enqueueByQueue(order, queue, condition);
+        StopTriggerBook inactiveOrders = getInactiveStopLimitOrders(order.getSide());
+        Order previous = inactiveOrders.findByOrderId(order.getOrderId());
+        if (previous != null)
+            uncountInactiveSellOrder(previous);
+        inactiveOrders.add(order);
+        countInactiveSellOrder(order);
     }
 
     public void enqueueActiveStopLimitOrder(Order order) {
-        List<Order> queue = getQueue(order.getSide());
-        Predicate<Order> condition = order::inactiveOrderQueuesBefore;
-        enqueueByQueue(order, queue, condition);
+        getQueue(order.getSide()).enqueue(order, order::inactiveOrderQueuesBefore);
+    }
+
+    public void checkConsistency() {
+        buyQueue.checkConsistency();
+        sellQueue.checkConsistency();
+        checkAuctionDepthConsistency(buyQueue);
+        checkAuctionDepthConsistency(sellQueue);
+        checkCommittedSellQuantityConsistency();
+        inactiveBuyStopLimitOrders.checkConsistency();
+        inactiveSellStopLimitOrders.checkConsistency();
+    }
+
+    private void checkAuctionDepthConsistency(OrderQueue queue) {
+        long quantity = 0;
+        for (PriceLevel level : queue.priceLevels())
+            quantity += level.getTotalQuantity();
+        if (auctionDepth.totalQuantity(queue.getSide()) != quantity)
+            throw new IllegalStateException("auction depth of " + queue.getSide() + " side is stale");
+    }
+
+    private void checkCommittedSellQuantityConsistency() {
+        Map<Shareholder, Long> expected = new HashMap<>();
+        sellQueue.forEach(order -> expected.merge(order.getShareholder(), (long) order.getTotalQuantity(), Long::sum));
+        inactiveSellStopLimitOrders.forEach(
+                order -> expected.merge(order.getShareholder(), (long) order.getTotalQuantity(), Long::sum));
+        expected.values().removeIf(quantity -> quantity == 0);
+        if (!expected.equals(committedSellQuantityByShareholder))
+            throw new IllegalStateException("committed sell quantities " + committedSellQuantityByShareholder
+                    + " do not match the book " + expected);
     }
 
 }
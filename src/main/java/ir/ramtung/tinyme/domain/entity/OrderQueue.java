@@ -0,0 +1,61 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * One side of an order book, kept in price-time priority as defined by
+ * {@link Order#queuesBefore(Order)}: better prices first, and orders on the
+ * same price in arrival order.
+ */
+public interface OrderQueue extends Iterable<Order> {
+    /**
+     * Told about every change of the quantity resting in the queue: orders
+     * entering and leaving it, and resting orders whose quantity changed.
+     */
+    interface QuantityListener {
+        void quantityChanged(Order order, int price, long quantityDelta, int ordersDelta);
+    }
+
+    Side getSide();
+
+    boolean isEmpty();
+
+    int size();
+
+    Order first();
+
+    void enqueue(Order order);
+
+    /**
+     * Inserts the order in its price level before the first order for which
+     * {@code queuesBefore} holds, instead of at the end of the level.
+     */
+    void enqueue(Order order, Predicate<Order> queuesBefore);
+
+    void putFirst(Order order);
+
+    Order removeFirst();
+
+    /**
+     * Takes note of a change to the quantity of a resting order made in place,
+     * such as a partial fill. Orders that are not resting are ignored.
+     */
+    void updateQuantity(Order order);
+
+    Order findByOrderId(long orderId);
+
+    boolean removeByOrderId(long orderId);
+
+    boolean removeIf(Predicate<Order> condition);
+
+    Iterable<PriceLevel> priceLevels();
+
+    List<Order> toList();
+
+    /**
+     * Verifies that the price levels and the order-id index agree, throwing
+     * {@link IllegalStateException} otherwise. Meant to be called by tests.
+     */
+    void checkConsistency();
+}
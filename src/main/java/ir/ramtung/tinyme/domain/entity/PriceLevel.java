@@ -0,0 +1,159 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import lombok.Getter;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * The orders resting on a single price, in arrival order. Orders are kept in
+ * an intrusive doubly linked list so that the owning queue can unlink any of
+ * them in constant time through the {@link Node} it indexed.
+ */
+public class PriceLevel implements Iterable<Order> {
+    static final class Node {
+        final Order order;
+        PriceLevel level;
+        int quantity;
+        Node prev;
+        Node next;
+
+        private Node(Order order, PriceLevel level) {
+            this.order = order;
+            this.level = level;
+            this.quantity = order.getTotalQuantity();
+        }
+    }
+
+    @Getter
+    private final int price;
+    private Node head;
+    private Node tail;
+    private int size;
+    @Getter
+    private long totalQuantity;
+
+    public PriceLevel(int price) {
+        this.price = price;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Order first() {
+        return head.order;
+    }
+
+    Node firstNode() {
+        return head;
+    }
+
+    Node addLast(Order order) {
+        Node node = new Node(order, this);
+        linkBefore(node, null);
+        return node;
+    }
+
+    Node addFirst(Order order) {
+        Node node = new Node(order, this);
+        linkBefore(node, head);
+        return node;
+    }
+
+    Node add(Order order, Predicate<Order> queuesBefore) {
+        Node successor = head;
+        while (successor != null && !queuesBefore.test(successor.order))
+            successor = successor.next;
+        Node node = new Node(order, this);
+        linkBefore(node, successor);
+        return node;
+    }
+
+    private void linkBefore(Node node, Node successor) {
+        Node predecessor = successor == null ? tail : successor.prev;
+        node.prev = predecessor;
+        node.next = successor;
+        if (predecessor == null)
+            head = node;
+        else
+            predecessor.next = node;
+        if (successor == null)
+            tail = node;
+        else
+            successor.prev = node;
+        size++;
+        totalQuantity += node.quantity;
+    }
+
+    void unlink(Node node) {
+        if (node.prev == null)
+            head = node.next;
+        else
+            node.prev.next = node.next;
+        if (node.next == null)
+            tail = node.prev;
+        else
+            node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+        node.level = null;
+        size--;
+        totalQuantity -= node.quantity;
+    }
+
+    long updateQuantity(Node node) {
+        int quantity = node.order.getTotalQuantity();
+        long delta = quantity - node.quantity;
+        node.quantity = quantity;
+        totalQuantity += delta;
+        return delta;
+    }
+
+    void checkConsistency(Side side) {
+        int count = 0;
+        long quantity = 0;
+        Node previous = null;
+        for (Node node = head; node != null; node = node.next) {
+            if (node.level != this || node.prev != previous)
+                throw new IllegalStateException("broken links in price level " + price);
+            if (node.order.getSide() != side || node.order.getPrice() != price)
+                throw new IllegalStateException("order " + node.order.getOrderId() + " is in price level " + price);
+            if (node.quantity != node.order.getTotalQuantity())
+                throw new IllegalStateException("quantity of order " + node.order.getOrderId() + " changed behind the book");
+            previous = node;
+            count++;
+            quantity += node.quantity;
+        }
+        if (previous != tail || count != size)
+            throw new IllegalStateException("price level " + price + " has " + count + " orders, expected " + size);
+        if (quantity != totalQuantity)
+            throw new IllegalStateException("price level " + price + " holds " + quantity + ", expected " + totalQuantity);
+    }
+
+    @Override
+    public Iterator<Order> iterator() {
+        return new Iterator<>() {
+            private Node next = head;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Order next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                Order order = next.order;
+                next = next.next;
+                return order;
+            }
+        };
+    }
+}
@@ -0,0 +1,207 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * An {@link OrderQueue} backed by a sorted map of price levels, best price
+ * first. Inserting an order costs O(log L) in the number of levels and the
+ * best level is cached so that the top of the book is O(1). Every resting
+ * order is also indexed by its id, so finding and removing an order does not
+ * depend on the depth of the book. Every change of the quantity resting in the
+ * queue is passed on to its {@link OrderQueue.QuantityListener}.
+ */
+public class PriceLevelOrderQueue implements OrderQueue {
+    private final Side side;
+    private final TreeMap<Integer, PriceLevel> levels;
+    private final Map<Long, PriceLevel.Node> nodeByOrderId;
+    private final QuantityListener listener;
+    private PriceLevel bestLevel;
+
+    public PriceLevelOrderQueue(Side side, QuantityListener listener) {
+        this.side = side;
+        this.listener = listener;
+        Comparator<Integer> priority = side == Side.BUY ? Comparator.reverseOrder() : Comparator.naturalOrder();
+        this.levels = new TreeMap<>(priority);
+        this.nodeByOrderId = new HashMap<>();
+    }
+
+    @Override
+    public Side getSide() {
+        return side;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return nodeByOrderId.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return nodeByOrderId.size();
+    }
+
+    @Override
+    public Order first() {
+        return bestLevel == null ? null : bestLevel.first();
+    }
+
+    private boolean isBetter(int price, int otherPrice) {
+        return side == Side.BUY ? price > otherPrice : price < otherPrice;
+    }
+
+    private PriceLevel levelFor(int price) {
+        PriceLevel level = levels.get(price);
+        if (level == null) {
+            level = new PriceLevel(price);
+            levels.put(price, level);
+            if (bestLevel == null || isBetter(price, bestLevel.getPrice()))
+                bestLevel = level;
+        }
+        return level;
+    }
+
+    private void index(PriceLevel.Node node) {
+        listener.quantityChanged(node.order, node.level.getPrice(), node.quantity, 1);
+        PriceLevel.Node previous = nodeByOrderId.put(node.order.getOrderId(), node);
+        if (previous != null)
+            unlink(previous);
+    }
+
+    private void unlink(PriceLevel.Node node) {
+        PriceLevel level = node.level;
+        listener.quantityChanged(node.order, level.getPrice(), -node.quantity, -1);
+        level.unlink(node);
+        if (!level.isEmpty())
+            return;
+        levels.remove(level.getPrice());
+        if (level == bestLevel)
+            bestLevel = levels.isEmpty() ? null : levels.firstEntry().getValue();
+    }
+
+    private Order remove(PriceLevel.Node node) {
+        nodeByOrderId.remove(node.order.getOrderId());
+        unlink(node);
+        return node.order;
+    }
+
+    @Override
+    public void enqueue(Order order) {
+        order.queue();
+        index(levelFor(order.getPrice()).addLast(order));
+    }
+
+    @Override
+    public void enqueue(Order order, Predicate<Order> queuesBefore) {
+        order.queue();
+        index(levelFor(order.getPrice()).add(order, queuesBefore));
+    }
+
+    @Override
+    public void putFirst(Order order) {
+        order.queue();
+        index(levelFor(order.getPrice()).addFirst(order));
+    }
+
+    @Override
+    public Order removeFirst() {
+        return remove(bestLevel.firstNode());
+    }
+
+    @Override
+    public void updateQuantity(Order order) {
+        PriceLevel.Node node = nodeByOrderId.get(order.getOrderId());
+        if (node != null && node.order == order)
+            listener.quantityChanged(order, node.level.getPrice(), node.level.updateQuantity(node), 0);
+    }
+
+    @Override
+    public Order findByOrderId(long orderId) {
+        PriceLevel.Node node = nodeByOrderId.get(orderId);
+        return node == null ? null : node.order;
+    }
+
+    @Override
+    public boolean removeByOrderId(long orderId) {
+        PriceLevel.Node node = nodeByOrderId.get(orderId);
+        if (node == null)
+            return false;
+        remove(node);
+        return true;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<Order> condition) {
+        List<PriceLevel.Node> matching = new ArrayList<>();
+        for (PriceLevel.Node node : nodeByOrderId.values()) {
+            if (condition.test(node.order))
+                matching.add(node);
+        }
+        matching.forEach(this::remove);
+        return !matching.isEmpty();
+    }
+
+    @Override
+    public Iterable<PriceLevel> priceLevels() {
+        return levels.values();
+    }
+
+    @Override
+    public List<Order> toList() {
+        List<Order> orders = new ArrayList<>(size());
+        forEach(orders::add);
+        return orders;
+    }
+
+    @Override
+    public void checkConsistency() {
+        int count = 0;
+        for (Map.Entry<Integer, PriceLevel> entry : levels.entrySet()) {
+            PriceLevel level = entry.getValue();
+            if (level.getPrice() != entry.getKey() || level.isEmpty())
+                throw new IllegalStateException("stale price level " + entry.getKey() + " on " + side + " side");
+            level.checkConsistency(side);
+            for (Order order : level) {
+                PriceLevel.Node node = nodeByOrderId.get(order.getOrderId());
+                if (node == null || node.order != order || node.level != level)
+                    throw new IllegalStateException("order " + order.getOrderId() + " is not indexed on " + side);
+            }
+            count += level.size();
+        }
+        if (count != nodeByOrderId.size())
+            throw new IllegalStateException(side + " side has " + count + " orders but indexes "
+                    + nodeByOrderId.size());
+        if (bestLevel != (levels.isEmpty() ? null : levels.firstEntry().getValue()))
+            throw new IllegalStateException("best level of " + side + " side is stale");
+    }
+
+    @Override
+    public Iterator<Order> iterator() {
+        return new Iterator<>() {
+            private final Iterator<PriceLevel> levelIterator = levels.values().iterator();
+            private Iterator<Order> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && levelIterator.hasNext())
+                    current = levelIterator.next().iterator();
+                return current.hasNext();
+            }
+
+            @Override
+            public Order next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return current.next();
+            }
+        };
+    }
+}
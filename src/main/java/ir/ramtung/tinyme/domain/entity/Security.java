@@ -11,9 +11,6 @@ import ir.ramtung.tinyme.domain.factory.*;
 
 import lombok.Builder;
 import lombok.Getter;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -70,6 +67,7 @@ public class Security {
                     enterOrderRq.getEntryTime(), enterOrderRq.getPeakSize(), OrderStatus.NEW,
                     enterOrderRq.getMinimumExecutionQuantity());
         }
+        order.stamp(enterOrderRq.getSequence());
         return order;
     }
 
@@ -173,7 +171,7 @@ public class Security {
     private MatchResult executeActiveOrder(Order order, Order originalOrder, EnterOrderRq updateOrderRq) {
         if (!isLosesPriority(originalOrder, updateOrderRq) && updateOrderRq.getStopPrice() == 0) {
             decreaseBuyCredit(order);
-            return MatchResult.executed(null, List.of());
+            return MatchResult.executed(null, new TradeBuffer());
         } else {
             order.markAsUpdating();
             return null;
@@ -231,6 +229,7 @@ public class Security {
             handleBuyOrderCredit(order);
             Order originalOrder = order.snapshot();
             order.updateFromRequest(updateOrderRq);
+            orderBook.updateQuantity(order);
             MatchResult matchResult = processUpdatedOrder(order, originalOrder, updateOrderRq, matcher);
             return matchResult;
         } else {
@@ -238,15 +237,6 @@ public class Security {
         }
     }
 
-    public void processActivatedStopLimitOrders(Matcher matcher) {
-        List<Order> activatedOrders = orderBook.getActiveStopLimitOrders();
-        for (Order activatedOrder : activatedOrders) {
-            MatchResult matchResult = matcher.execute(activatedOrder);
-            activatedOrders.remove(activatedOrder);
-            matchResults.add(matchResult);
-        }
-    }
-
     public boolean checkOrderPossibility(Order order) {
         if (order.getSide() == Side.BUY) {
             return order.getBroker().hasEnoughCredit(order.getValue());
@@ -271,185 +261,38 @@ public class Security {
         return matchResult;
     }
 
-    private LinkedList<Trade> openingSellOrders(Matcher matcher) {
-        LinkedList<Trade> trades = new LinkedList<>();
-        int sellQueueSize = orderBook.getSellQueue().size();
-        for (int i = 0; i < sellQueueSize; i++) {
-            MatchResult matchResult = matcher.auctionExecute(orderBook.getSellQueue().get(i), indicativeOpeningPrice);
-            if (matchResult.trades().size() == 0) {
-                continue;
-            }
+    private TradeBuffer openingSellOrders(Matcher matcher) {
+        TradeBuffer trades = new TradeBuffer();
+        List<Order> sellOrders = orderBook.getQueue(Side.SELL).toList();
+        for (Order sellOrder : sellOrders) {
+            MatchResult matchResult = matcher.auctionExecute(sellOrder, indicativeOpeningPrice);
             trades.addAll(matchResult.trades());
         }
         return trades;
     }
 
-    private void removeTradedSells() {
-        Iterator<Order> sellIterator = orderBook.getSellQueue().iterator();
-        while (sellIterator.hasNext()) {
-            Order sellOrder = sellIterator.next();
-            if (sellOrder.getQuantity() == 0) {
-                sellIterator.remove();
-            }
-        }
-    }
-
-    private void removeTradedBuys() {
-        Iterator<Order> buyIterator = orderBook.getBuyQueue().iterator();
-        while (buyIterator.hasNext()) {
-            Order buyOrder = buyIterator.next();
-            if (buyOrder.getQuantity() == 0) {
-                buyIterator.remove();
-            }
-        }
-    }
-
     private void removeTradedOrders() {
-        removeTradedSells();
-        removeTradedBuys();
+        orderBook.getQueue(Side.SELL).removeIf(order -> order.getQuantity() == 0);
+        orderBook.getQueue(Side.BUY).removeIf(order -> order.getQuantity() == 0);
     }
 
     private MatchResult openingProcess(Matcher matcher) {
         updateIndicativeOpeningPrice();
-        LinkedList<Trade> trades = openingSellOrders(matcher);
+        TradeBuffer trades = openingSellOrders(matcher);
         removeTradedOrders();
         return MatchResult.traded(trades);
     }
 
-    private int getTotalQuantityInOrderList(LinkedList<Order> orders) {
-        int sumQuantity = 0;
-        for (Order order : orders) {
-            sumQuantity += order.getTotalQuantity();
-        }
-        return sumQuantity;
-    }
-
-    private LinkedList<Order> findBuyOrdersToTrade(int selectedOpenPrice) {
-        LinkedList<Order> selectedBuyOrders = new LinkedList<>();
-        for (Order order : orderBook.getBuyQueue()) {
-            if (order.getPrice() >= selectedOpenPrice) {
-                selectedBuyOrders.add(order);
-            }
-        }
-        return selectedBuyOrders;
-    }
-
-    private LinkedList<Order> findSellOrdersToTrade(int selectedOpenPrice) {
-        LinkedList<Order> selectedSellOrders = new LinkedList<>();
-        for (Order order : orderBook.getSellQueue()) {
-            if (order.getPrice() <= selectedOpenPrice) {
-                selectedSellOrders.add(order);
-            }
-        }
-        return selectedSellOrders;
-    }
-
-    private int findOverallQuantityTraded(int selectedOpenPrice) {
-        LinkedList<Order> selectedBuyOrders = findBuyOrdersToTrade(selectedOpenPrice);
-        LinkedList<Order> selectedSellOrders = findSellOrdersToTrade(selectedOpenPrice);
-        int sumQuantityInSellQueue = getTotalQuantityInOrderList(selectedSellOrders);
-        int sumQuantityInBuyQueue = getTotalQuantityInOrderList(selectedBuyOrders);
-        return Math.min(sumQuantityInSellQueue, sumQuantityInBuyQueue);
-    }
-
-    private int findDistanceToLastTradePrice(int price) {
-        return Math.abs(price - (int) orderBook.getLastTradePrice());
-    }
-
-    private int updateMinDistance(int distance, int minDistance) {
-        if (distance < minDistance) {
-            minDistance = distance;
-        }
-        return minDistance;
-    }
-
-    private int updateMinElement(int distance, int minDistance, int price, int minElement) {
-        if (distance < minDistance) {
-            minElement = price;
-        } else if (distance == minDistance && price < minElement) {
-            minElement = price;
-        }
-        return minElement;
-    }
-
-    private int findClosestToLastTradePrice(LinkedList<Integer> openPrices) {
-        int minDistance = Integer.MAX_VALUE;
-        int minElement = Integer.MAX_VALUE;
-        for (int price : openPrices) {
-            int distance = findDistanceToLastTradePrice(price);
-            minElement = updateMinElement(distance, minDistance, price, minElement);
-            minDistance = updateMinDistance(distance, minDistance);
-        }
-        return minElement;
-    }
-
-    private LinkedList<Integer> findCandidatePrices(int minPrice, int maxPrice) {
-        List<PriceQuantity> priceQuantities = calculatePriceQuantities(minPrice, maxPrice);
-        return getBestOpenPrices(priceQuantities);
-    }
-
-    private List<PriceQuantity> calculatePriceQuantities(int minPrice, int maxPrice) {
-        List<PriceQuantity> priceQuantities = new ArrayList<>();
-        for (int i = minPrice; i <= maxPrice; i++) {
-            int overallQuantityTraded = findOverallQuantityTraded(i);
-            priceQuantities.add(new PriceQuantity(i, overallQuantityTraded));
-        }
-        return priceQuantities;
-    }
-
-    private LinkedList<Integer> getBestOpenPrices(List<PriceQuantity> priceQuantities) {
-        int maxQuantityTraded = 0;
-        LinkedList<Integer> bestOpenPrices = new LinkedList<>();
-        for (PriceQuantity pq : priceQuantities) {
-            int price = pq.getPrice();
-            int quantity = pq.getQuantity();
-            if (quantity > maxQuantityTraded) {
-                maxQuantityTraded = quantity;
-                bestOpenPrices.clear();
-                bestOpenPrices.add(price);
-            } else if (quantity == maxQuantityTraded && quantity != 0) {
-                bestOpenPrices.add(price);
-            }
-        }
-        highestQuantity = maxQuantityTraded;
-        return bestOpenPrices;
-    }
-
-    public int findBestAuctionPrice(LinkedList<Integer> allOrdersPrices) {
-        if (allOrdersPrices.size() != 0) {
-            int minPrice = Collections.min(allOrdersPrices);
-            int maxPrice = Collections.max(allOrdersPrices);
-            LinkedList<Integer> bestOpenPrices = findCandidatePrices(minPrice, maxPrice);
-            return findClosestToLastTradePrice(bestOpenPrices);
-        }
-        return 0;
-    }
-
     public int updateIndicativeOpeningPrice() {
-        LinkedList<Integer> allOrdersPrices = gatherAllOrderPrices();
-        return setIndicativeOpeningPrice(allOrdersPrices);
-    }
-
-    private LinkedList<Integer> gatherAllOrderPrices() {
-        LinkedList<Integer> allOrdersPrices = new LinkedList<>();
-        gatherPricesFromQueue(orderBook.getBuyQueue(), allOrdersPrices);
-        gatherPricesFromQueue(orderBook.getSellQueue(), allOrdersPrices);
-        return allOrdersPrices;
-    }
-
-    private void gatherPricesFromQueue(LinkedList<Order> queue, LinkedList<Integer> allOrdersPrices) {
-        for (Order order : queue) {
-            allOrdersPrices.add(order.getPrice());
-        }
-    }
-
-    private int setIndicativeOpeningPrice(LinkedList<Integer> allOrdersPrices) {
-        int bestAuctionPrice = findBestAuctionPrice(allOrdersPrices);
-        if (bestAuctionPrice == Integer.MAX_VALUE) {
-            bestAuctionPrice = 0;
+        PriceQuantity openingPrice = orderBook.getAuctionDepth()
+                .openingPrice((int) orderBook.getLastTradePrice(), tickSize);
+        if (openingPrice == null) {
+            indicativeOpeningPrice = 0;
+            return 0;
         }
-        indicativeOpeningPrice = bestAuctionPrice;
-        return bestAuctionPrice;
+        highestQuantity = openingPrice.getQuantity();
+        indicativeOpeningPrice = openingPrice.getPrice();
+        return indicativeOpeningPrice;
     }
 
 }
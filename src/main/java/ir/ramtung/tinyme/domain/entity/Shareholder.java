@@ -5,8 +5,8 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @ToString
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
@@ -19,11 +19,11 @@ public class Shareholder {
     private String name;
     @Getter
     @Builder.Default
-    private Map<Security, Integer> positions = new HashMap<>();
+    private Map<Security, Integer> positions = new ConcurrentHashMap<>();
 
     public void incPosition(Security security, int amount) {
         assert amount >= 0;
-        positions.put(security, positions.getOrDefault(security, 0) + amount);
+        positions.merge(security, amount, Integer::sum);
     }
 
     public void decPosition(Security security, int amount) {
@@ -47,7 +47,7 @@ public class StopLimitOrder extends Order {
 
     private Order createSnapshot(int quantity) {
         return new StopLimitOrder(orderId, security, side, quantity, price, broker, shareholder, entryTime, stopPrice,
-                OrderStatus.SNAPSHOT);
+                OrderStatus.SNAPSHOT).stampedLike(this);
     }
 
     @Override
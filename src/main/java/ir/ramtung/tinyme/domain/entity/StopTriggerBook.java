@@ -0,0 +1,159 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The inactive stop-limit orders of one side, indexed by stop price. Orders
+ * are kept in activation order as defined by
+ * {@link Order#inactiveOrderQueuesBefore(Order)}: buy orders by ascending and
+ * sell orders by descending stop price, and orders on the same stop price by
+ * sequence number. A trade price triggers a prefix of that order, so the
+ * orders it activates are found by a range query on the stop prices instead
+ * of a scan.
+ */
+public class StopTriggerBook implements Iterable<Order> {
+    private final Side side;
+    private final TreeMap<Double, LinkedList<Order>> ordersByStopPrice;
+    private final Map<Long, Order> orderById;
+
+    public StopTriggerBook(Side side) {
+        this.side = side;
+        Comparator<Double> activation = side == Side.BUY ? Comparator.naturalOrder() : Comparator.reverseOrder();
+        this.ordersByStopPrice = new TreeMap<>(activation);
+        this.orderById = new HashMap<>();
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public boolean isEmpty() {
+        return orderById.isEmpty();
+    }
+
+    public int size() {
+        return orderById.size();
+    }
+
+    public void add(Order order) {
+        Order previous = orderById.put(order.getOrderId(), order);
+        if (previous != null)
+            unlink(previous);
+        List<Order> orders = ordersByStopPrice.computeIfAbsent(order.getStopPrice(), stopPrice -> new LinkedList<>());
+        ListIterator<Order> it = orders.listIterator();
+        while (it.hasNext()) {
+            if (order.inactiveOrderQueuesBefore(it.next())) {
+                it.previous();
+                break;
+            }
+        }
+        order.queue();
+        it.add(order);
+    }
+
+    private void unlink(Order order) {
+        List<Order> orders = ordersByStopPrice.get(order.getStopPrice());
+        Iterator<Order> it = orders.iterator();
+        while (it.hasNext()) {
+            if (it.next() == order) {
+                it.remove();
+                break;
+            }
+        }
+        if (orders.isEmpty())
+            ordersByStopPrice.remove(order.getStopPrice());
+    }
+
+    public Order findByOrderId(long orderId) {
+        return orderById.get(orderId);
+    }
+
+    public Order removeByOrderId(long orderId) {
+        Order order = orderById.remove(orderId);
+        if (order != null)
+            unlink(order);
+        return order;
+    }
+
+    public Order first() {
+        return ordersByStopPrice.isEmpty() ? null : ordersByStopPrice.firstEntry().getValue().getFirst();
+    }
+
+    /**
+     * Removes and returns the first order to activate if the given trade
+     * price triggers it, or returns null otherwise.
+     */
+    public Order pollTriggered(double lastTradePrice) {
+        Order first = first();
+        if (first == null || !((StopLimitOrder) first).checkActivation(lastTradePrice))
+            return null;
+        return removeByOrderId(first.getOrderId());
+    }
+
+    /**
+     * Removes and returns, in activation order, every order the given trade
+     * price triggers.
+     */
+    public List<Order> pollAllTriggered(double lastTradePrice) {
+        SortedMap<Double, LinkedList<Order>> triggered = ordersByStopPrice.headMap(lastTradePrice, true);
+        List<Order> orders = new ArrayList<>();
+        triggered.values().forEach(orders::addAll);
+        triggered.clear();
+        orders.forEach(order -> orderById.remove(order.getOrderId()));
+        return orders;
+    }
+
+    public void checkConsistency() {
+        int count = 0;
+        for (Map.Entry<Double, LinkedList<Order>> entry : ordersByStopPrice.entrySet()) {
+            if (entry.getValue().isEmpty())
+                throw new IllegalStateException("empty stop price " + entry.getKey() + " on " + side + " side");
+            Order previous = null;
+            for (Order order : entry.getValue()) {
+                if (order.getSide() != side || order.getStopPrice() != entry.getKey())
+                    throw new IllegalStateException("order " + order.getOrderId() + " is on stop price " + entry.getKey());
+                if (orderById.get(order.getOrderId()) != order)
+                    throw new IllegalStateException("inactive order " + order.getOrderId() + " is not indexed on " + side);
+                if (previous != null && order.inactiveOrderQueuesBefore(previous))
+                    throw new IllegalStateException("inactive order " + order.getOrderId() + " is out of order");
+                previous = order;
+                count++;
+            }
+        }
+        if (count != orderById.size())
+            throw new IllegalStateException(side + " inactive orders are " + count + " but indexes " + orderById.size());
+    }
+
+    @Override
+    public Iterator<Order> iterator() {
+        return new Iterator<>() {
+            private final Iterator<LinkedList<Order>> stopPriceIterator = ordersByStopPrice.values().iterator();
+            private Iterator<Order> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && stopPriceIterator.hasNext())
+                    current = stopPriceIterator.next().iterator();
+                return current.hasNext();
+            }
+
+            @Override
+            public Order next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return current.next();
+            }
+        };
+    }
+}
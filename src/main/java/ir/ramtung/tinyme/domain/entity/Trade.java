@@ -1,11 +1,16 @@
 package ir.ramtung.tinyme.domain.entity;
 
-import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 
-@Builder
+/**
+ * A trade between a buy and a sell order. Only the fields events and
+ * settlement need are kept: the order ids, the price and quantity, and the
+ * brokers and shareholders, which are shared rather than copied. The buyer's
+ * credit reservation is held in the trade itself, so a fill allocates nothing
+ * but the trade. A trade is only settled on the thread owning its security.
+ */
 @Getter
 @EqualsAndHashCode
 @ToString
@@ -13,38 +18,56 @@ public class Trade {
     Security security;
     private int price;
     private int quantity;
-    private Order buy;
-    private Order sell;
+    private long buyOrderId;
+    private long sellOrderId;
+    private Broker buyBroker;
+    private Broker sellBroker;
+    @ToString.Exclude
+    private Shareholder buyShareholder;
+    @ToString.Exclude
+    private Shareholder sellShareholder;
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private long buyersReservedCredit;
 
     public Trade(Security security, int price, int quantity, Order order1, Order order2) {
         this.security = security;
         this.price = price;
         this.quantity = quantity;
-        Order snapshot1 = order1.snapshot();
-        Order snapshot2 = order2.snapshot();
-        if (order1.getSide() == Side.BUY) {
-            this.buy = snapshot1;
-            this.sell = snapshot2;
-        } else {
-            this.buy = snapshot2;
-            this.sell = snapshot1;
-        }
+        Order buy = order1.getSide() == Side.BUY ? order1 : order2;
+        Order sell = buy == order1 ? order2 : order1;
+        this.buyOrderId = buy.getOrderId();
+        this.buyBroker = buy.getBroker();
+        this.buyShareholder = buy.getShareholder();
+        this.sellOrderId = sell.getOrderId();
+        this.sellBroker = sell.getBroker();
+        this.sellShareholder = sell.getShareholder();
     }
 
     public long getTradedValue() {
         return (long) price * quantity;
     }
 
-    public void increaseSellersCredit() {
-        sell.getBroker().increaseCreditBy(getTradedValue());
+    public boolean reserveBuyersCredit() {
+        if (!buyBroker.tryReserveCredit(getTradedValue()))
+            return false;
+        buyersReservedCredit = getTradedValue();
+        return true;
     }
 
-    public void decreaseBuyersCredit() {
-        buy.getBroker().decreaseCreditBy(getTradedValue());
+    public void commitBuyersCredit() {
+        settleBuyersCredit(false);
     }
 
-    public boolean buyerHasEnoughCredit() {
-        return buy.getBroker().hasEnoughCredit(getTradedValue());
+    public void releaseBuyersCredit() {
+        settleBuyersCredit(true);
+    }
+
+    private void settleBuyersCredit(boolean refund) {
+        if (buyersReservedCredit == 0)
+            return;
+        buyBroker.settleReservation(buyersReservedCredit, refund);
+        buyersReservedCredit = 0;
     }
 
 }
@@ -0,0 +1,68 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * The trades of a match, in order, in a growable array together with the
+ * running total of their quantities. The total is kept as trades are added,
+ * so checking the minimum execution quantity needs no extra pass over the
+ * trades.
+ */
+public final class TradeBuffer extends AbstractList<Trade> implements RandomAccess {
+    private static final Trade[] EMPTY = new Trade[0];
+    private static final int INITIAL_CAPACITY = 8;
+
+    private Trade[] trades = EMPTY;
+    private int size;
+    private long totalQuantity;
+
+    @Override
+    public boolean add(Trade trade) {
+        if (size == trades.length)
+            trades = Arrays.copyOf(trades, Math.max(INITIAL_CAPACITY, size * 2));
+        trades[size++] = trade;
+        totalQuantity += trade.getQuantity();
+        modCount++;
+        return true;
+    }
+
+    public void addAll(TradeBuffer other) {
+        if (size + other.size > trades.length)
+            trades = Arrays.copyOf(trades, Math.max(INITIAL_CAPACITY, Math.max(size * 2, size + other.size)));
+        System.arraycopy(other.trades, 0, trades, size, other.size);
+        size += other.size;
+        totalQuantity += other.totalQuantity;
+        modCount++;
+    }
+
+    @Override
+    public Trade get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(index);
+        return trades[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public Trade getFirst() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return trades[0];
+    }
+
+    public Trade getLast() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return trades[size - 1];
+    }
+
+    public long totalQuantity() {
+        return totalQuantity;
+    }
+}
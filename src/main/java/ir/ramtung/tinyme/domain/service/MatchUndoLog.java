@@ -0,0 +1,87 @@
+package ir.ramtung.tinyme.domain.service;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.Order;
+import ir.ramtung.tinyme.domain.entity.OrderBook;
+
+import java.util.Arrays;
+
+/**
+ * What a match has changed so far, recorded as it goes: each resting order it
+ * traded against with that order's quantities before the trade, and each
+ * amount of credit it took. Aborting the match replays the log in reverse,
+ * so the book and the brokers end up exactly as they were. Credit the match
+ * pays out is only held here and deposited when the match commits, so other
+ * shards never spend credit a rollback would have to take back. Entries are
+ * kept in parallel arrays that are reused from one match to the next.
+ */
+final class MatchUndoLog {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Order[] orders = new Order[INITIAL_CAPACITY];
+    private int[] totalQuantities = new int[INITIAL_CAPACITY];
+    private int[] quantities = new int[INITIAL_CAPACITY];
+    private int fills;
+    private Broker[] debitedBrokers = new Broker[INITIAL_CAPACITY];
+    private long[] debits = new long[INITIAL_CAPACITY];
+    private int debitCount;
+    private Broker[] depositBrokers = new Broker[INITIAL_CAPACITY];
+    private long[] deposits = new long[INITIAL_CAPACITY];
+    private int depositCount;
+
+    void clear() {
+        Arrays.fill(orders, 0, fills, null);
+        Arrays.fill(debitedBrokers, 0, debitCount, null);
+        Arrays.fill(depositBrokers, 0, depositCount, null);
+        fills = 0;
+        debitCount = 0;
+        depositCount = 0;
+    }
+
+    void recordFill(Order restingOrder) {
+        if (fills == orders.length) {
+            orders = Arrays.copyOf(orders, fills * 2);
+            totalQuantities = Arrays.copyOf(totalQuantities, fills * 2);
+            quantities = Arrays.copyOf(quantities, fills * 2);
+        }
+        orders[fills] = restingOrder;
+        totalQuantities[fills] = restingOrder.getTotalQuantity();
+        quantities[fills] = restingOrder.getQuantity();
+        fills++;
+    }
+
+    void deposit(Broker broker, long amount) {
+        if (depositCount == depositBrokers.length) {
+            depositBrokers = Arrays.copyOf(depositBrokers, depositCount * 2);
+            deposits = Arrays.copyOf(deposits, depositCount * 2);
+        }
+        depositBrokers[depositCount] = broker;
+        deposits[depositCount] = amount;
+        depositCount++;
+    }
+
+    void decreaseCredit(Broker broker, long amount) {
+        broker.decreaseCreditBy(amount);
+        if (debitCount == debitedBrokers.length) {
+            debitedBrokers = Arrays.copyOf(debitedBrokers, debitCount * 2);
+            debits = Arrays.copyOf(debits, debitCount * 2);
+        }
+        debitedBrokers[debitCount] = broker;
+        debits[debitCount] = amount;
+        debitCount++;
+    }
+
+    void commit() {
+        for (int i = 0; i < depositCount; i++)
+            depositBrokers[i].increaseCreditBy(deposits[i]);
+        clear();
+    }
+
+    void rollback(OrderBook orderBook) {
+        for (int i = debitCount - 1; i >= 0; i--)
+            debitedBrokers[i].increaseCreditBy(debits[i]);
+        for (int i = fills - 1; i >= 0; i--)
+            orderBook.restore(orders[i], totalQuantities[i], quantities[i]);
+        clear();
+    }
+}
@@ -3,20 +3,63 @@ package ir.ramtung.tinyme.domain.service;
 import ir.ramtung.tinyme.domain.entity.*;
 import org.springframework.stereotype.Service;
 
-import java.util.LinkedList;
-import java.util.ListIterator;
-
+/**
+ * Matches orders against the book. Every change a match makes to the book and
+ * to broker credit is recorded in a {@link MatchUndoLog} as it is made, so a
+ * match that fails its credit or minimum execution quantity check is undone
+ * by replaying the log backwards. Credit paid to sellers is deposited only
+ * once the match has committed; a rolled back log has nothing left to
+ * deposit. Each thread reuses its own log.
+ * <p>
+ * Before touching anything, a continuous match is checked against what the
+ * book can offer: an order whose minimum execution quantity exceeds the
+ * quantity resting at prices it can trade at, or a buy order whose broker
+ * cannot pay for its first trade, is rejected right away with the outcome the
+ * full match would have ended with.
+ */
 @Service
 public class Matcher {
+    private final ThreadLocal<MatchUndoLog> undoLogs = ThreadLocal.withInitial(MatchUndoLog::new);
+
+    private MatchUndoLog startUndoLog() {
+        MatchUndoLog undoLog = undoLogs.get();
+        undoLog.clear();
+        return undoLog;
+    }
 
     public MatchResult match(Order newOrder) {
+        MatchUndoLog undoLog = startUndoLog();
+        MatchResult result = match(newOrder, undoLog);
+        undoLog.commit();
+        return result;
+    }
+
+    private MatchResult match(Order newOrder, MatchUndoLog undoLog) {
         OrderBook orderBook = newOrder.getSecurity().getOrderBook();
-        LinkedList<Trade> trades = new LinkedList<>();
-        processOrderBook(newOrder, orderBook, trades);
-        return finalizeMatch(newOrder, trades);
+        MatchResult infeasible = checkFeasibility(newOrder, orderBook);
+        if (infeasible != null)
+            return infeasible;
+        TradeBuffer trades = new TradeBuffer();
+        processOrderBook(newOrder, orderBook, trades, undoLog);
+        return finalizeMatch(newOrder, trades, undoLog);
     }
 
-    private void processOrderBook(Order newOrder, OrderBook orderBook, LinkedList<Trade> trades) {
+    private MatchResult checkFeasibility(Order newOrder, OrderBook orderBook) {
+        int minimumExecutionQuantity = newOrder.getMinimumExecutionQuantity();
+        if (minimumExecutionQuantity > 0 && orderBook.matchableQuantity(newOrder) < minimumExecutionQuantity)
+            return MatchResult.notEnoughQuantitiesMatched();
+        if (newOrder.getSide() == Side.BUY && !(newOrder instanceof StopLimitOrder)
+                && orderBook.hasOrderOfType(Side.SELL)) {
+            Order first = orderBook.matchWithFirst(newOrder);
+            if (first != null && !newOrder.getBroker().hasEnoughCredit(
+                    (long) first.getPrice() * Math.min(newOrder.getQuantity(), first.getQuantity())))
+                return minimumExecutionQuantity > 0 ? MatchResult.notEnoughQuantitiesMatched()
+                        : MatchResult.notEnoughCredit();
+        }
+        return null;
+    }
+
+    private void processOrderBook(Order newOrder, OrderBook orderBook, TradeBuffer trades, MatchUndoLog undoLog) {
         while (orderBook.hasOrderOfType(newOrder.getSide().opposite()) && newOrder.getQuantity() > 0) {
             Order matchingOrder = orderBook.matchWithFirst(newOrder);
             if (matchingOrder == null)
@@ -24,11 +67,12 @@ public class Matcher {
 
             Trade trade = createTrade(newOrder, matchingOrder);
             if (newOrder.getSide() == Side.BUY) {
-                if (!processBuyTrade(newOrder, trades, trade))
+                if (!processBuyTrade(newOrder, trades, trade, undoLog))
                     return;
             }
-            trade.increaseSellersCredit();
+            undoLog.deposit(trade.getSellBroker(), trade.getTradedValue());
             trades.add(trade);
+            undoLog.recordFill(matchingOrder);
             updateOrderQuantities(newOrder, orderBook, matchingOrder);
         }
     }
@@ -38,12 +82,11 @@ public class Matcher {
                 Math.min(newOrder.getQuantity(), matchingOrder.getQuantity()), newOrder, matchingOrder);
     }
 
-    private boolean processBuyTrade(Order newOrder, LinkedList<Trade> trades, Trade trade) {
-        if (trade.buyerHasEnoughCredit()) {
-            trade.decreaseBuyersCredit();
+    private boolean processBuyTrade(Order newOrder, TradeBuffer trades, Trade trade, MatchUndoLog undoLog) {
+        if (trade.reserveBuyersCredit()) {
             return true;
         } else {
-            rollbackBuyTrades(newOrder, trades);
+            rollback(newOrder, trades, undoLog);
             return false;
         }
     }
@@ -60,38 +103,23 @@ public class Matcher {
             }
         } else {
             matchingOrder.decreaseQuantity(newOrder.getQuantity());
+            orderBook.updateQuantity(matchingOrder);
             newOrder.makeQuantityZero();
         }
     }
 
-    private MatchResult finalizeMatch(Order newOrder, LinkedList<Trade> trades) {
-        if (matchBasedOnMinimumExecutionQuantity(newOrder, trades)) {
+    private MatchResult finalizeMatch(Order newOrder, TradeBuffer trades, MatchUndoLog undoLog) {
+        if (matchBasedOnMinimumExecutionQuantity(newOrder, trades, undoLog)) {
             return MatchResult.executed(newOrder, trades);
         } else {
             return MatchResult.notEnoughQuantitiesMatched();
         }
     }
 
-    private void rollbackBuyTrades(Order newOrder, LinkedList<Trade> trades) {
-        assert newOrder.getSide() == Side.BUY;
-        newOrder.getBroker().increaseCreditBy(trades.stream().mapToLong(Trade::getTradedValue).sum());
-        trades.forEach(trade -> trade.getSell().getBroker().decreaseCreditBy(trade.getTradedValue()));
-
-        ListIterator<Trade> it = trades.listIterator(trades.size());
-        while (it.hasPrevious()) {
-            newOrder.getSecurity().getOrderBook().restoreSellOrder(it.previous().getSell());
-        }
-    }
-
-    private void rollbackSellTrades(Order newOrder, LinkedList<Trade> trades) {
-        assert newOrder.getSide() == Side.SELL;
-        newOrder.getBroker().decreaseCreditBy(trades.stream().mapToLong(Trade::getTradedValue).sum());
-        trades.forEach(trade -> trade.getBuy().getBroker().increaseCreditBy(trade.getTradedValue()));
-
-        ListIterator<Trade> it = trades.listIterator(trades.size());
-        while (it.hasPrevious()) {
-            newOrder.getSecurity().getOrderBook().restoreBuyOrder(it.previous().getBuy());
-        }
+    private void rollback(Order newOrder, TradeBuffer trades, MatchUndoLog undoLog) {
+        for (int i = trades.size() - 1; i >= 0; i--)
+            trades.get(i).releaseBuyersCredit();
+        undoLog.rollback(newOrder.getSecurity().getOrderBook());
     }
 
     public MatchResult auctionAddToQueue(Order order) {
@@ -122,10 +150,9 @@ public class Matcher {
     }
 
     private MatchResult checkBuyerCredit(Order order) {
-        if (!order.getBroker().hasEnoughCredit(order.getValue())) {
+        if (!order.getBroker().tryDecreaseCreditBy(order.getValue())) {
             return MatchResult.notEnoughCredit();
         }
-        order.getBroker().decreaseCreditBy(order.getValue());
         return null;
     }
 
@@ -142,21 +169,32 @@ public class Matcher {
     }
 
     public MatchResult execute(Order order) {
-        MatchResult result = match(order);
-        if (isMatchingOutcomeNotEnough(result))
+        MatchUndoLog undoLog = startUndoLog();
+        MatchResult result = match(order, undoLog);
+        if (isMatchingOutcomeNotEnough(result)) {
+            undoLog.commit();
             return result;
+        }
 
-        result = processRemainder(order, result);
+        result = processRemainder(order, result, undoLog);
+        undoLog.commit();
+        TradeBuffer trades = result.trades();
+        for (int i = 0; i < trades.size(); i++)
+            trades.get(i).commitBuyersCredit();
         updateLastTradePriceAndPositions(order, result);
         return result;
     }
 
     public MatchResult auctionExecute(Order order, int indicativeOpeningPrice) {
-        MatchResult result = auctionMatch(order, indicativeOpeningPrice);
-        if (isMatchingOutcomeNotEnough(result))
+        MatchUndoLog undoLog = startUndoLog();
+        MatchResult result = auctionMatch(order, indicativeOpeningPrice, undoLog);
+        if (isMatchingOutcomeNotEnough(result)) {
+            undoLog.commit();
             return result;
+        }
 
         result = processRemainderForAuction(order, result);
+        undoLog.commit();
         updateLastTradePriceAndPositions(order, result);
         return result;
     }
@@ -166,14 +204,16 @@ public class Matcher {
                 || result.outcome() == MatchingOutcome.NOT_ENOUGH_QUANTITIES_MATCHED;
     }
 
-    private MatchResult processRemainder(Order order, MatchResult result) {
+    private MatchResult processRemainder(Order order, MatchResult result, MatchUndoLog undoLog) {
         if (result.remainder().getQuantity() > 0) {
             if (order.getSide() == Side.BUY) {
-                if (!order.getBroker().hasEnoughCredit(order.getValue()) && !(order instanceof StopLimitOrder)) {
-                    rollbackBuyTrades(order, result.trades());
-                    return MatchResult.notEnoughCredit();
+                if (!order.getBroker().tryDecreaseCreditBy(order.getValue())) {
+                    if (!(order instanceof StopLimitOrder)) {
+                        rollback(order, result.trades(), undoLog);
+                        return MatchResult.notEnoughCredit();
+                    }
+                    order.getBroker().decreaseCreditBy(order.getValue());
                 }
-                order.getBroker().decreaseCreditBy(order.getValue());
             }
             order.getSecurity().getOrderBook().enqueue(result.remainder());
         }
@@ -188,78 +228,84 @@ public class Matcher {
     }
 
     private void updateLastTradePriceAndPositions(Order order, MatchResult result) {
-        if (!result.trades().isEmpty()) {
-            order.getSecurity().getOrderBook().setLastTradePrice(result.trades().getLast().getPrice());
-            for (Trade trade : result.trades()) {
-                trade.getBuy().getShareholder().incPosition(trade.getSecurity(), trade.getQuantity());
-                trade.getSell().getShareholder().decPosition(trade.getSecurity(), trade.getQuantity());
+        TradeBuffer trades = result.trades();
+        if (!trades.isEmpty()) {
+            order.getSecurity().getOrderBook().setLastTradePrice(trades.getLast().getPrice());
+            for (int i = 0; i < trades.size(); i++) {
+                Trade trade = trades.get(i);
+                trade.getBuyShareholder().incPosition(trade.getSecurity(), trade.getQuantity());
+                trade.getSellShareholder().decPosition(trade.getSecurity(), trade.getQuantity());
             }
         }
     }
 
     public MatchResult auctionMatch(Order newOrder, int indicativeOpeningPrice) {
+        MatchUndoLog undoLog = startUndoLog();
+        MatchResult result = auctionMatch(newOrder, indicativeOpeningPrice, undoLog);
+        undoLog.commit();
+        return result;
+    }
+
+    private MatchResult auctionMatch(Order newOrder, int indicativeOpeningPrice, MatchUndoLog undoLog) {
         OrderBook orderBook = newOrder.getSecurity().getOrderBook();
-        LinkedList<Trade> trades = new LinkedList<>();
-        processAuctionOrderBook(newOrder, orderBook, trades, indicativeOpeningPrice);
-        return finalizeAuctionMatch(newOrder, trades);
+        TradeBuffer trades = new TradeBuffer();
+        processAuctionOrderBook(newOrder, orderBook, trades, indicativeOpeningPrice, undoLog);
+        MatchResult result = finalizeAuctionMatch(newOrder, trades, undoLog);
+        orderBook.updateQuantity(newOrder);
+        return result;
     }
 
-    private void processAuctionOrderBook(Order newOrder, OrderBook orderBook, LinkedList<Trade> trades,
-            int indicativeOpeningPrice) {
+    private void processAuctionOrderBook(Order newOrder, OrderBook orderBook, TradeBuffer trades,
+            int indicativeOpeningPrice, MatchUndoLog undoLog) {
         while (orderBook.hasOrderOfType(newOrder.getSide().opposite()) && newOrder.getQuantity() > 0) {
             Order matchingOrder = orderBook.matchWithFirst(newOrder);
             if (matchingOrder == null)
                 break;
 
-            Trade trade = createAuctionTrade(newOrder, matchingOrder, indicativeOpeningPrice);
+            Trade trade = createAuctionTrade(newOrder, matchingOrder, indicativeOpeningPrice, undoLog);
             trades.add(trade);
+            undoLog.recordFill(matchingOrder);
 
             updateOrderQuantities(newOrder, orderBook, matchingOrder);
         }
     }
 
-    private Trade createAuctionTrade(Order newOrder, Order matchingOrder, int indicativeOpeningPrice) {
+    private Trade createAuctionTrade(Order newOrder, Order matchingOrder, int indicativeOpeningPrice,
+            MatchUndoLog undoLog) {
         Trade trade = new Trade(newOrder.getSecurity(), indicativeOpeningPrice,
                 Math.min(newOrder.getQuantity(), matchingOrder.getQuantity()), newOrder, matchingOrder);
-        trade.decreaseBuyersCredit();
-        trade.increaseSellersCredit();
-        adjustCredits(newOrder, matchingOrder, trade);
+        undoLog.decreaseCredit(trade.getBuyBroker(), trade.getTradedValue());
+        undoLog.deposit(trade.getSellBroker(), trade.getTradedValue());
+        adjustCredits(newOrder, matchingOrder, trade, undoLog);
         return trade;
     }
 
-    private void adjustCredits(Order newOrder, Order matchingOrder, Trade trade) {
+    private void adjustCredits(Order newOrder, Order matchingOrder, Trade trade, MatchUndoLog undoLog) {
         if (matchingOrder.getSide() == Side.BUY) {
-            matchingOrder.getBroker().increaseCreditBy(trade.getQuantity() * matchingOrder.getPrice());
+            undoLog.deposit(matchingOrder.getBroker(), trade.getQuantity() * matchingOrder.getPrice());
         } else {
-            newOrder.getBroker().increaseCreditBy(trade.getQuantity() * newOrder.getPrice());
+            undoLog.deposit(newOrder.getBroker(), trade.getQuantity() * newOrder.getPrice());
         }
     }
 
-    private MatchResult finalizeAuctionMatch(Order newOrder, LinkedList<Trade> trades) {
-        if (matchBasedOnMinimumExecutionQuantity(newOrder, trades)) {
+    private MatchResult finalizeAuctionMatch(Order newOrder, TradeBuffer trades, MatchUndoLog undoLog) {
+        if (matchBasedOnMinimumExecutionQuantity(newOrder, trades, undoLog)) {
             return MatchResult.executed(newOrder, trades);
         } else {
             return MatchResult.notEnoughQuantitiesMatched();
         }
     }
 
-    private boolean matchBasedOnMinimumExecutionQuantity(Order newOrder, LinkedList<Trade> trades) {
-        int sumOfTradeQuantities = calculateSumOfTradeQuantities(trades);
-        if (newOrder.getMinimumExecutionQuantity() > sumOfTradeQuantities) {
-            if (newOrder.getSide() == Side.SELL) {
-                rollbackSellTrades(newOrder, trades);
-            } else if (newOrder.getSide() == Side.BUY && !(newOrder instanceof StopLimitOrder)) {
-                rollbackBuyTrades(newOrder, trades);
+    private boolean matchBasedOnMinimumExecutionQuantity(Order newOrder, TradeBuffer trades,
+            MatchUndoLog undoLog) {
+        if (newOrder.getMinimumExecutionQuantity() > trades.totalQuantity()) {
+            if (newOrder.getSide() == Side.SELL
+                    || (newOrder.getSide() == Side.BUY && !(newOrder instanceof StopLimitOrder))) {
+                rollback(newOrder, trades, undoLog);
             }
             return false;
         } else
             return true;
     }
 
-    private int calculateSumOfTradeQuantities(LinkedList<Trade> trades) {
-        return trades.stream()
-                .mapToInt(Trade::getQuantity)
-                .sum();
-    }
-
 }
@@ -0,0 +1,103 @@
+package ir.ramtung.tinyme.domain.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the requests of every security on a single thread owned by its shard.
+ * Securities are assigned to shards by their ISIN, and each shard executes
+ * its tasks one at a time in submission order from its own inbound queue, so
+ * an order book is only ever touched by one thread and requests on the same
+ * security are processed in the order they arrived while different shards
+ * match in parallel.
+ * <p>
+ * Brokers and shareholders are shared by all shards. {@code Broker} updates
+ * its credit atomically and offers {@code tryDecreaseCreditBy} for checking
+ * and debiting credit in one step; the outcomes of these checks are recorded
+ * per request so replay does not depend on timing. A shareholder's position
+ * on a security is only changed by the shard owning that security.
+ * <p>
+ * Shards are drained on shutdown after the message listeners and the request
+ * journal have stopped and before the repositories are saved.
+ */
+@Service
+public class MatchingShards implements SmartLifecycle {
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final List<ExecutorService> shards;
+    private volatile boolean running;
+
+    public MatchingShards(@Value("${matchingShards:0}") int shardCount) {
+        int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        shards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = "matching-" + i;
+            shards.add(Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, name)));
+        }
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    public int shardOf(String isin) {
+        return isin == null ? 0 : Math.floorMod(isin.hashCode(), shards.size());
+    }
+
+    public void execute(String isin, Runnable task) {
+        submit(shardOf(isin), task, "Request on " + isin + " failed");
+    }
+
+    /**
+     * Runs the task on the given shard after everything already submitted to
+     * it, such as a task that must see the shard between two requests.
+     */
+    public void executeOnShard(int shard, Runnable task) {
+        submit(shard, task, "Task on shard " + shard + " failed");
+    }
+
+    private void submit(int shard, Runnable task, String failure) {
+        shards.get(shard).execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                log.log(Level.SEVERE, failure, ex);
+            }
+        });
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        shards.forEach(ExecutorService::shutdown);
+        try {
+            for (ExecutorService shard : shards)
+                shard.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 2;
+    }
+}
@@ -12,12 +12,14 @@ import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
 import ir.ramtung.tinyme.messaging.request.MatchingState;
 import ir.ramtung.tinyme.messaging.request.OrderEntryType;
+import ir.ramtung.tinyme.messaging.request.Request;
 import ir.ramtung.tinyme.repository.BrokerRepository;
 import ir.ramtung.tinyme.repository.SecurityRepository;
 import ir.ramtung.tinyme.repository.ShareholderRepository;
 
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -44,7 +46,12 @@ public class OrderHandler {
                 .findInActiveByOrderId(deleteOrderRq.getSide(), deleteOrderRq.getOrderId()) != null;
     }
 
+    private void accept(Request request) {
+        request.accept(EngineClock.nextSequence());
+    }
+
     public void handleDeleteOrder(DeleteOrderRq deleteOrderRq) {
+        accept(deleteOrderRq);
         try {
             validateDeleteOrderRq(deleteOrderRq);
             Security security = securityRepository.findSecurityByIsin(deleteOrderRq.getSecurityIsin());
@@ -64,6 +71,7 @@ public class OrderHandler {
     }
 
     public void handleEnterOrder(EnterOrderRq enterOrderRq) {
+        accept(enterOrderRq);
         try {
             validateOrder(enterOrderRq);
             ProcessOrder(enterOrderRq);
@@ -73,6 +81,7 @@ public class OrderHandler {
     }
 
     public void handleChangeMatchStateRq(ChangeMatchStateRq changeMatchStateRq) {
+        accept(changeMatchStateRq);
         Security security = securityRepository.findSecurityByIsin(changeMatchStateRq.getSecurityIsin());
         MatchingState matchingState = changeMatchStateRq.getState();
         MatchResult matchResult = security.ChangeMatchStateRq(matchingState, matcher);
@@ -116,8 +125,8 @@ public class OrderHandler {
         eventPublisher.publish(new OrderActivatedEvent(order.getRequestId(), enterOrderRq.getOrderId()));
     }
 
-    private void publishOrderActivatedEvent(Order order) {
-        eventPublisher.publish(new OrderActivatedEvent(order.getRequestId(), order.getOrderId()));
+    private OrderActivatedEvent orderActivatedEvent(Order order) {
+        return new OrderActivatedEvent(order.getRequestId(), order.getOrderId());
     }
 
     private void publishOrderExecutedEvent(EnterOrderRq enterOrderRq, MatchResult matchResult) {
@@ -125,15 +134,10 @@ public class OrderHandler {
                 matchResult.trades().stream().map(TradeDTO::new).collect(Collectors.toList())));
     }
 
-    private void publishOrderExecutedEvent(EnterOrderRq enterOrderRq, Order order, MatchResult matchResult) {
-        if (enterOrderRq != null) {
-            publishEvent(new OrderExecutedEvent(enterOrderRq.getRequestId(), order.getOrderId(),
-                    matchResult.trades().stream().map(TradeDTO::new).collect(Collectors.toList())));
-        } else {
-            publishEvent(new OrderExecutedEvent(order.getRequestId(), order.getOrderId(),
-                    matchResult.trades().stream().map(TradeDTO::new).collect(Collectors.toList())));
-        }
-
+    private OrderExecutedEvent orderExecutedEvent(EnterOrderRq enterOrderRq, Order order, MatchResult matchResult) {
+        long requestId = enterOrderRq != null ? enterOrderRq.getRequestId() : order.getRequestId();
+        return new OrderExecutedEvent(requestId, order.getOrderId(),
+                matchResult.trades().stream().map(TradeDTO::new).collect(Collectors.toList()));
     }
 
     private void publishOrderRejectedEvent(DeleteOrderRq deleteOrderRq, List<String> reasons) {
@@ -150,8 +154,7 @@ public class OrderHandler {
     }
 
     private void publishTradeEvent(Security security, Trade trade) {
-        publishEvent(new TradeEvent(security.getIsin(), trade.getPrice(), trade.getQuantity(),
-                trade.getBuy().getOrderId(), trade.getSell().getOrderId()));
+        publishEvent(new TradeEvent(trade));
     }
 
     private void publishSecurityStateChangedEvent(Security security, MatchingState matchingState) {
@@ -194,8 +197,8 @@ public class OrderHandler {
             publishOrderActivatedEvent(order, enterOrderRq);
         } else {
             Trade lastTrade = matchResult.trades().getLast();
-            Order matchedOrder = currentSecurity.getOrderBook().findByOrderId(lastTrade.getBuy().getSide(),
-                    lastTrade.getBuy().getOrderId());
+            Order matchedOrder = currentSecurity.getOrderBook().findByOrderId(Side.BUY,
+                    lastTrade.getBuyOrderId());
             if (matchedOrder != null) {
                 publishOrderActivatedEvent(matchedOrder, enterOrderRq);
             }
@@ -254,17 +257,33 @@ public class OrderHandler {
         activateStopLimitOrders(security, enterOrderRq);
     }
 
+    /**
+     * Runs the cascade of stop-limit orders activated by the trades of a request.
+     * Each activated order may trade and move the last trade price, so orders are
+     * taken from the trigger book one at a time until none is triggered. The
+     * events of the cascade are collected and published as one batch once it has
+     * settled, in activation order, each order's {@link OrderActivatedEvent}
+     * followed by its {@link OrderExecutedEvent} if it traded.
+     */
     private void execInactiveStopLimitOrders(Security security, EnterOrderRq enterOrderRq) {
+        List<Event> events = new ArrayList<>();
         while (true) {
             Order executableOrder = security.getOrderBook().dequeueNextStopLimitOrder(enterOrderRq.getSide());
             if (executableOrder == null) {
                 break;
             }
-            processExecutableOrder(executableOrder, enterOrderRq);
+            processExecutableOrder(executableOrder, enterOrderRq, events);
         }
+        eventPublisher.publish(events);
     }
 
+    /**
+     * Runs the cascade started by reopening continuous trading. Buy and sell
+     * orders are activated in turns, a buy order first, and the events are
+     * published as one batch in the same order as above.
+     */
     private void execInactiveStopLimitOrders(Security security) {
+        List<Event> events = new ArrayList<>();
         while (true) {
             Order executableBuyOrder = security.getOrderBook().dequeueNextStopLimitOrder(Side.BUY);
             Order executableSellOrder = security.getOrderBook().dequeueNextStopLimitOrder(Side.SELL);
@@ -272,38 +291,39 @@ public class OrderHandler {
                 break;
             }
             if (executableBuyOrder != null) {
-                processExecutableOrder(executableBuyOrder, null);
+                processExecutableOrder(executableBuyOrder, null, events);
             }
             if (executableSellOrder != null) {
-                processExecutableOrder(executableSellOrder, null);
+                processExecutableOrder(executableSellOrder, null, events);
             }
         }
+        eventPublisher.publish(events);
     }
 
-    private void processExecutableOrder(Order executableOrder, EnterOrderRq enterOrderRq) {
+    private void processExecutableOrder(Order executableOrder, EnterOrderRq enterOrderRq, List<Event> events) {
         executableOrder.getBroker().increaseCreditBy(executableOrder.getValue());
         MatchResult matchResult = matcher.execute(executableOrder);
         if (matchResult.outcome() != MatchingOutcome.INACTIVE_ORDER_ENQUEUED && executableOrder.getStopPrice() > 0) {
-            publishOrderActivatedEvent(executableOrder);
+            events.add(orderActivatedEvent(executableOrder));
         }
         if (!matchResult.trades().isEmpty()) {
-            publishOrderExecutedEvent(enterOrderRq, executableOrder, matchResult);
+            events.add(orderExecutedEvent(enterOrderRq, executableOrder, matchResult));
         }
     }
 
     private void execInactiveStopLimitOrdersAuction(Security security) {
-        while (true) {
-            Order executableBuyOrder = security.getOrderBook().dequeueNextStopLimitOrder(Side.BUY);
-            Order executableSellOrder = security.getOrderBook().dequeueNextStopLimitOrder(Side.SELL);
-            if (executableBuyOrder == null && executableSellOrder == null) {
-                break;
-            }
-            processAuctionOrder(executableBuyOrder, Side.BUY);
-            processAuctionOrder(executableSellOrder, Side.SELL);
+        // Entering the auction queue does not trade, so the last trade price and the triggered orders stay fixed
+        List<Order> executableBuyOrders = security.getOrderBook().dequeueTriggeredStopLimitOrders(Side.BUY);
+        List<Order> executableSellOrders = security.getOrderBook().dequeueTriggeredStopLimitOrders(Side.SELL);
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < Math.max(executableBuyOrders.size(), executableSellOrders.size()); i++) {
+            processAuctionOrder(i < executableBuyOrders.size() ? executableBuyOrders.get(i) : null, Side.BUY, events);
+            processAuctionOrder(i < executableSellOrders.size() ? executableSellOrders.get(i) : null, Side.SELL, events);
         }
+        eventPublisher.publish(events);
     }
 
-    private void processAuctionOrder(Order executableOrder, Side side) {
+    private void processAuctionOrder(Order executableOrder, Side side, List<Event> events) {
         if (executableOrder != null) {
             if (side == Side.BUY) {
                 executableOrder.getBroker().increaseCreditBy(executableOrder.getValue());
@@ -311,7 +331,7 @@ public class OrderHandler {
             MatchResult matchResult = matcher.auctionAddToQueue(executableOrder);
             if (matchResult.outcome() != MatchingOutcome.INACTIVE_ORDER_ENQUEUED
                     && executableOrder.getStopPrice() > 0) {
-                publishOrderActivatedEvent(executableOrder);
+                events.add(orderActivatedEvent(executableOrder));
             }
         }
     }
@@ -0,0 +1,15 @@
+package ir.ramtung.tinyme.journal;
+
+/**
+ * When the journal forces written records to the disk. Requests are handed to
+ * matching once their group has been written, so only {@code EVERY_COMMIT}
+ * guarantees that nothing processed is lost on a power failure.
+ */
+public enum FsyncPolicy {
+    /** Leaves flushing to the operating system; survives process crashes only. */
+    NONE,
+    /** Forces every group commit before its requests are processed. */
+    EVERY_COMMIT,
+    /** Forces at most once per configured interval, bounding the loss window. */
+    INTERVAL
+}
@@ -0,0 +1,256 @@
+package ir.ramtung.tinyme.journal;
+
+import ir.ramtung.tinyme.domain.entity.CreditDecisions;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.request.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary form of the journaled requests. A record is the payload length, the
+ * payload and a CRC32C of the payload, so a record torn by a crash is detected
+ * instead of being replayed. The payload starts with the request type, id,
+ * security and entry time, followed by the fields of that request type. Enums
+ * are written by ordinal and nulls by a -1 marker.
+ * <p>
+ * The credit decisions of a request are written in a record of their own once
+ * it has been processed, keyed by the position of the request's record.
+ */
+public final class JournalCodec {
+    static final byte ENTER_ORDER = 1;
+    static final byte DELETE_ORDER = 2;
+    static final byte CHANGE_MATCH_STATE = 3;
+    static final byte CREDIT_DECISIONS = 4;
+
+    private static final int FRAMING = Integer.BYTES * 2;
+    private static final int COMMON = Byte.BYTES + Long.BYTES + Short.BYTES + Byte.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int ENTER_ORDER_FIELDS = 2 * Byte.BYTES + 3 * Long.BYTES + 5 * Integer.BYTES;
+    private static final int DELETE_ORDER_FIELDS = Byte.BYTES + Long.BYTES;
+    private static final int CHANGE_MATCH_STATE_FIELDS = Byte.BYTES;
+    private static final int CREDIT_DECISIONS_FIELDS = Byte.BYTES + Long.BYTES + 2 * Integer.BYTES;
+
+    public record CreditOutcome(long requestPosition, CreditDecisions decisions) {
+    }
+
+    private JournalCodec() {
+    }
+
+    public static int encodedSize(Request request) {
+        int isinLength = request.getSecurityIsin() == null ? 0 : utf8Length(request.getSecurityIsin());
+        return FRAMING + COMMON + isinLength + fieldsSize(request);
+    }
+
+    private static int fieldsSize(Request request) {
+        if (request instanceof EnterOrderRq)
+            return ENTER_ORDER_FIELDS;
+        if (request instanceof DeleteOrderRq)
+            return DELETE_ORDER_FIELDS;
+        if (request instanceof ChangeMatchStateRq)
+            return CHANGE_MATCH_STATE_FIELDS;
+        throw new IllegalArgumentException("Cannot journal " + request.getClass().getSimpleName());
+    }
+
+    private static int utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Writes the record of {@code request} at the position of {@code buffer},
+     * which must have {@link #encodedSize(Request)} bytes remaining.
+     */
+    public static void encode(Request request, ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putInt(0);
+        if (request instanceof EnterOrderRq enterOrderRq) {
+            putCommon(buffer, ENTER_ORDER, request);
+            putEnum(buffer, enterOrderRq.getRequestType());
+            buffer.putLong(enterOrderRq.getOrderId());
+            putEnum(buffer, enterOrderRq.getSide());
+            buffer.putInt(enterOrderRq.getQuantity());
+            buffer.putInt(enterOrderRq.getPrice());
+            buffer.putLong(enterOrderRq.getBrokerId());
+            buffer.putLong(enterOrderRq.getShareholderId());
+            buffer.putInt(enterOrderRq.getPeakSize());
+            buffer.putInt(enterOrderRq.getMinimumExecutionQuantity());
+            buffer.putInt(enterOrderRq.getStopPrice());
+        } else if (request instanceof DeleteOrderRq deleteOrderRq) {
+            putCommon(buffer, DELETE_ORDER, request);
+            putEnum(buffer, deleteOrderRq.getSide());
+            buffer.putLong(deleteOrderRq.getOrderId());
+        } else if (request instanceof ChangeMatchStateRq changeMatchStateRq) {
+            putCommon(buffer, CHANGE_MATCH_STATE, request);
+            putEnum(buffer, changeMatchStateRq.getState());
+        } else {
+            throw new IllegalArgumentException("Cannot journal " + request.getClass().getSimpleName());
+        }
+        seal(buffer, start);
+    }
+
+    public static int encodedSize(CreditOutcome outcome) {
+        return FRAMING + CREDIT_DECISIONS_FIELDS + outcome.decisions().toByteArray().length;
+    }
+
+    public static void encode(CreditOutcome outcome, ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putInt(0);
+        buffer.put(CREDIT_DECISIONS);
+        buffer.putLong(outcome.requestPosition());
+        buffer.putInt(outcome.decisions().size());
+        byte[] outcomes = outcome.decisions().toByteArray();
+        buffer.putInt(outcomes.length);
+        buffer.put(outcomes);
+        seal(buffer, start);
+    }
+
+    private static void seal(ByteBuffer buffer, int start) {
+        int length = buffer.position() - start - Integer.BYTES;
+        buffer.putInt(start, length);
+        buffer.putInt(checksum(buffer, start + Integer.BYTES, length));
+    }
+
+    private static void putCommon(ByteBuffer buffer, byte type, Request request) {
+        buffer.put(type);
+        buffer.putLong(request.getRequestId());
+        if (request.getSecurityIsin() == null) {
+            buffer.putShort((short) -1);
+        } else {
+            byte[] isin = request.getSecurityIsin().getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) isin.length);
+            buffer.put(isin);
+        }
+        LocalDateTime entryTime = request.getEntryTime();
+        buffer.put((byte) (entryTime == null ? 0 : 1));
+        buffer.putLong(entryTime == null ? 0 : entryTime.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(entryTime == null ? 0 : entryTime.getNano());
+    }
+
+    private static void putEnum(ByteBuffer buffer, Enum<?> value) {
+        buffer.put((byte) (value == null ? -1 : value.ordinal()));
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * The number of bytes of the record at the position of {@code buffer} if it
+     * is complete, or -1 if more bytes are needed to tell.
+     */
+    public static int completeRecordSize(ByteBuffer buffer) {
+        if (buffer.remaining() < Integer.BYTES)
+            return -1;
+        int length = buffer.getInt(buffer.position());
+        if (length < 0 || buffer.remaining() - FRAMING < length)
+            return -1;
+        return length + FRAMING;
+    }
+
+    /**
+     * Whether the complete record at the position of {@code buffer} holds
+     * credit decisions rather than a request.
+     */
+    public static boolean isCreditOutcome(ByteBuffer buffer) {
+        int start = buffer.position();
+        return buffer.getInt(start) > 0 && buffer.get(start + Integer.BYTES) == CREDIT_DECISIONS;
+    }
+
+    private static boolean intact(ByteBuffer buffer) {
+        int start = buffer.position();
+        int length = buffer.getInt(start);
+        return buffer.getInt(start + Integer.BYTES + length) == checksum(buffer, start + Integer.BYTES, length);
+    }
+
+    public static CreditOutcome decodeCreditOutcome(ByteBuffer buffer) {
+        if (!intact(buffer))
+            return null;
+        int start = buffer.position();
+        int length = buffer.getInt(start);
+        buffer.position(start + Integer.BYTES + Byte.BYTES);
+        long requestPosition = buffer.getLong();
+        int size = buffer.getInt();
+        byte[] outcomes = new byte[buffer.getInt()];
+        buffer.get(outcomes);
+        buffer.position(start + Integer.BYTES + length + Integer.BYTES);
+        return new CreditOutcome(requestPosition, CreditDecisions.valueOf(outcomes, size));
+    }
+
+    /**
+     * Reads the complete record at the position of {@code buffer}, or returns
+     * null without moving the position if its checksum does not match.
+     */
+    public static Request decode(ByteBuffer buffer) {
+        if (!intact(buffer))
+            return null;
+        int start = buffer.position();
+        int length = buffer.getInt(start);
+        buffer.position(start + Integer.BYTES);
+        byte type = buffer.get();
+        long requestId = buffer.getLong();
+        String isin = getString(buffer);
+        LocalDateTime entryTime = getDateTime(buffer);
+        Request request = switch (type) {
+            case ENTER_ORDER -> {
+                OrderEntryType requestType = getEnum(buffer, OrderEntryType.values());
+                long orderId = buffer.getLong();
+                Side side = getEnum(buffer, Side.values());
+                int quantity = buffer.getInt();
+                int price = buffer.getInt();
+                long brokerId = buffer.getLong();
+                long shareholderId = buffer.getLong();
+                int peakSize = buffer.getInt();
+                int minimumExecutionQuantity = buffer.getInt();
+                int stopPrice = buffer.getInt();
+                EnterOrderRq enterOrderRq = requestType == OrderEntryType.UPDATE_ORDER
+                        ? EnterOrderRq.createUpdateOrderRq(requestId, isin, orderId, entryTime, side, quantity, price,
+                                brokerId, shareholderId, peakSize, minimumExecutionQuantity, stopPrice)
+                        : EnterOrderRq.createNewOrderRq(requestId, isin, orderId, entryTime, side, quantity, price,
+                                brokerId, shareholderId, peakSize, minimumExecutionQuantity, stopPrice);
+                enterOrderRq.setRequestType(requestType);
+                yield enterOrderRq;
+            }
+            case DELETE_ORDER -> {
+                Side side = getEnum(buffer, Side.values());
+                DeleteOrderRq deleteOrderRq = new DeleteOrderRq(requestId, isin, side, buffer.getLong());
+                deleteOrderRq.setEntryTime(entryTime);
+                yield deleteOrderRq;
+            }
+            case CHANGE_MATCH_STATE -> {
+                ChangeMatchStateRq changeMatchStateRq = ChangeMatchStateRq.changeMatchStateRq(isin,
+                        getEnum(buffer, MatchingState.values()));
+                changeMatchStateRq.setRequestId(requestId);
+                changeMatchStateRq.setEntryTime(entryTime);
+                yield changeMatchStateRq;
+            }
+            default -> throw new IllegalStateException("Unknown journal record type " + type);
+        };
+        buffer.position(start + Integer.BYTES + length + Integer.BYTES);
+        return request;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static LocalDateTime getDateTime(ByteBuffer buffer) {
+        boolean present = buffer.get() != 0;
+        long epochSecond = buffer.getLong();
+        int nano = buffer.getInt();
+        return present ? LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC) : null;
+    }
+
+    private static <E extends Enum<E>> E getEnum(ByteBuffer buffer, E[] values) {
+        byte ordinal = buffer.get();
+        return ordinal < 0 ? null : values[ordinal];
+    }
+}
@@ -0,0 +1,61 @@
+package ir.ramtung.tinyme.journal;
+
+import ir.ramtung.tinyme.domain.entity.CreditDecisions;
+import ir.ramtung.tinyme.domain.service.Matcher;
+import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.messaging.EventPublisher;
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchStateRq;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.Request;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Applies journaled requests to the repositories the way {@code OrderHandler}
+ * applied them when they arrived, without publishing their events again.
+ * Requests are replayed one at a time, so a request whose credit checks
+ * depended on other shards is replayed with the decisions it got then.
+ */
+@Component
+public class JournalReplayer {
+    private static class DiscardingEventPublisher extends EventPublisher {
+        DiscardingEventPublisher() {
+            super(null, null);
+        }
+
+        @Override
+        public void publish(Event event) {
+        }
+
+        @Override
+        public void publish(List<Event> events) {
+        }
+    }
+
+    private final OrderHandler orderHandler;
+
+    public JournalReplayer(SecurityRepository securityRepository, BrokerRepository brokerRepository,
+            ShareholderRepository shareholderRepository, Matcher matcher) {
+        this.orderHandler = new OrderHandler(securityRepository, brokerRepository, shareholderRepository,
+                new DiscardingEventPublisher(), matcher);
+    }
+
+    public void replay(Request request) {
+        if (request instanceof EnterOrderRq enterOrderRq)
+            orderHandler.handleEnterOrder(enterOrderRq);
+        else if (request instanceof DeleteOrderRq deleteOrderRq)
+            orderHandler.handleDeleteOrder(deleteOrderRq);
+        else if (request instanceof ChangeMatchStateRq changeMatchStateRq)
+            orderHandler.handleChangeMatchStateRq(changeMatchStateRq);
+    }
+
+    public void replay(Request request, CreditDecisions decisions) {
+        decisions.apply(() -> replay(request));
+    }
+}
@@ -0,0 +1,467 @@
+package ir.ramtung.tinyme.journal;
+
+import ir.ramtung.tinyme.domain.entity.CreditDecisions;
+import ir.ramtung.tinyme.journal.JournalCodec.CreditOutcome;
+import ir.ramtung.tinyme.messaging.EventPublisher;
+import ir.ramtung.tinyme.messaging.Message;
+import ir.ramtung.tinyme.messaging.event.OrderRejectedEvent;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.Request;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of the requests accepted since the persistent data was
+ * last saved. A request is handed to matching only after its record has been
+ * written, so every request that changed the books can be replayed after a
+ * crash.
+ * <p>
+ * A single writer thread takes whatever requests are waiting, writes them
+ * with one call, forces them to the disk as the {@link FsyncPolicy} says, and
+ * then runs their continuations in journal order. Requests on a security are
+ * therefore processed in the order they are journaled, and replaying the
+ * journal in order rebuilds the same books.
+ * <p>
+ * Brokers are shared by the matching shards, so the credit checks of a
+ * request can depend on timing. Once a request has been processed, the
+ * {@link CreditDecisions} it made are journaled after it, and replay follows
+ * them. A request whose decisions did not reach the journal before a crash is
+ * replayed against the credit at that point of the replay.
+ * <p>
+ * On startup, after {@code DataLoader} has loaded the saved state and any
+ * snapshot has been restored, the journal is replayed from the position the
+ * restored state reflects, and any torn record at its end is cut off before
+ * appending resumes. Saving the persistent data on shutdown checkpoints the
+ * journal.
+ * <p>
+ * If the journal cannot be written, the requests of the failed batch and any
+ * still waiting are not processed: enter and delete requests are rejected back
+ * to their clients, and the journal stops taking requests, so new ones stay
+ * with the broker instead of being lost.
+ * Journaling is off when {@code journal.path} is not set.
+ */
+@Component
+public class RequestJournal implements SmartLifecycle {
+    private record Entry(Request request, LongConsumer continuation) {
+    }
+
+    private static final Entry STOP = new Entry(null, null);
+    private static final Entry WAKE = new Entry(null, position -> {});
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final Path path;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMillis;
+    private final int maxBatch;
+    private final JournalReplayer replayer;
+    private final EventPublisher eventPublisher;
+    private final BlockingQueue<Entry> pending;
+    private final Queue<CreditOutcome> outcomes = new ConcurrentLinkedQueue<>();
+    private long replayStart;
+    private volatile IOException failure;
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private Thread writer;
+    private volatile boolean running;
+
+    public RequestJournal(@Value("${journal.path:}") String path,
+            @Value("${journal.fsync:EVERY_COMMIT}") FsyncPolicy fsyncPolicy,
+            @Value("${journal.fsyncIntervalMillis:100}") long fsyncIntervalMillis,
+            @Value("${journal.maxBatch:1024}") int maxBatch,
+            @Value("${journal.capacity:65536}") int capacity,
+            JournalReplayer replayer, EventPublisher eventPublisher) {
+        this.path = path.isEmpty() ? null : Path.of(path);
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.maxBatch = maxBatch;
+        this.replayer = replayer;
+        this.eventPublisher = eventPublisher;
+        this.pending = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    /**
+     * Journals the request and runs {@code afterCommit} on the writer thread
+     * once it is written, blocking while the journal is full. With journaling
+     * off, {@code afterCommit} runs right away.
+     */
+    public void append(Request request, Runnable afterCommit) {
+        append(request, position -> afterCommit.run());
+    }
+
+    /**
+     * Like {@link #append(Request, Runnable)}, handing {@code afterCommit} the
+     * position of the request's record, or -1 with journaling off.
+     */
+    public void append(Request request, LongConsumer afterCommit) {
+        if (!isEnabled()) {
+            afterCommit.accept(-1);
+            return;
+        }
+        enqueue(new Entry(request, afterCommit));
+    }
+
+    /**
+     * Journals the credit decisions of the request at {@code position} once
+     * it has been processed. Never blocks; the decisions are dropped if the
+     * journal is off or failed, or once it has stopped.
+     */
+    public void recordCreditDecisions(long position, CreditDecisions decisions) {
+        if (position < 0 || decisions.isEmpty() || failure != null)
+            return;
+        outcomes.add(new CreditOutcome(position, decisions));
+        pending.offer(WAKE);
+    }
+
+    /**
+     * Runs {@code atPosition} on the writer thread with the journal length
+     * after every request appended so far, once their continuations have run
+     * and before any later request is handed on.
+     */
+    public void mark(LongConsumer atPosition) {
+        if (!isEnabled())
+            throw new IllegalStateException("Request journal is off");
+        enqueue(new Entry(null, atPosition));
+    }
+
+    private void enqueue(Entry entry) {
+        if (!running)
+            throw new IllegalStateException("Request journal is not running");
+        if (failure != null)
+            throw new IllegalStateException("Request journal " + path + " failed, no requests are taken", failure);
+        try {
+            pending.put(entry);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while journaling", ex);
+        }
+    }
+
+    /**
+     * Makes recovery skip the records before {@code position}, whose effect
+     * is already in the restored state. Must be called before the journal
+     * starts.
+     */
+    public void replayFrom(long position) {
+        replayStart = position;
+    }
+
+    /**
+     * Reads the records of a journal file in order and returns the length of
+     * its valid prefix, which ends before the first incomplete or corrupt
+     * record.
+     */
+    public static long read(Path path, Consumer<Request> consumer) throws IOException {
+        return read(path, 0, consumer);
+    }
+
+    public static long read(Path path, long from, Consumer<Request> consumer) throws IOException {
+        return read(path, from, (request, position) -> consumer.accept(request), outcome -> {});
+    }
+
+    private static long read(Path path, long from, ObjLongConsumer<Request> requests,
+            Consumer<CreditOutcome> creditOutcomes) throws IOException {
+        long valid = from;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (in.size() < from)
+                throw new IOException("Journal " + path + " is shorter than its replay start " + from);
+            in.position(from);
+            ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            boolean eof = false;
+            while (!eof) {
+                eof = in.read(readBuffer) < 0;
+                readBuffer.flip();
+                int size;
+                while ((size = JournalCodec.completeRecordSize(readBuffer)) > 0) {
+                    if (JournalCodec.isCreditOutcome(readBuffer)) {
+                        CreditOutcome outcome = JournalCodec.decodeCreditOutcome(readBuffer);
+                        if (outcome == null)
+                            return valid;
+                        creditOutcomes.accept(outcome);
+                    } else {
+                        Request request = JournalCodec.decode(readBuffer);
+                        if (request == null)
+                            return valid;
+                        requests.accept(request, valid);
+                    }
+                    valid += size;
+                }
+                readBuffer.compact();
+                if (!readBuffer.hasRemaining())
+                    readBuffer = ByteBuffer.allocate(readBuffer.capacity() * 2).put(readBuffer.flip());
+            }
+        }
+        return valid;
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        long replayed = 0;
+        long valid = replayStart;
+        if (Files.exists(path)) {
+            Map<Long, CreditDecisions> decisions = new HashMap<>();
+            read(path, replayStart, (request, position) -> {},
+                    outcome -> decisions.put(outcome.requestPosition(), outcome.decisions()));
+            long[] count = new long[1];
+            valid = read(path, replayStart, (request, position) -> {
+                CreditDecisions recorded = decisions.get(position);
+                if (recorded == null)
+                    replayer.replay(request);
+                else
+                    replayer.replay(request, recorded);
+                count[0]++;
+            }, outcome -> {});
+            replayed = count[0];
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() > valid) {
+            log.warning("Discarding " + (channel.size() - valid) + " bytes of torn journal records");
+            channel.truncate(valid);
+        }
+        channel.position(valid);
+        log.info("Journal replayed " + replayed + " requests");
+    }
+
+    /**
+     * Empties the journal once the state it leads to has been saved.
+     */
+    public void checkpoint() throws IOException {
+        if (!isEnabled() || !Files.exists(path))
+            return;
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            out.truncate(0);
+            out.force(true);
+        }
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(maxBatch);
+        boolean dirty = false;
+        long lastSync = System.nanoTime();
+        boolean stopping = false;
+        while (!stopping) {
+            long start = -1;
+            try {
+                Entry first = dirty ? pending.poll(fsyncIntervalMillis, TimeUnit.MILLISECONDS) : pending.take();
+                if (first == null) {
+                    channel.force(false);
+                    dirty = false;
+                    lastSync = System.nanoTime();
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, maxBatch - 1);
+                int stop = batch.indexOf(STOP);
+                if (stop >= 0) {
+                    batch.subList(stop, batch.size()).clear();
+                    stopping = true;
+                }
+                batch.removeIf(entry -> entry == WAKE);
+                if (failure != null) {
+                    outcomes.clear();
+                    refuse(batch);
+                    batch.clear();
+                    continue;
+                }
+                start = channel.position();
+                long[] positions = write(batch);
+                if ((fsyncPolicy == FsyncPolicy.EVERY_COMMIT && !batch.isEmpty()) || stopping) {
+                    channel.force(false);
+                } else if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+                    dirty = true;
+                    if (System.nanoTime() - lastSync >= TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis)) {
+                        channel.force(false);
+                        dirty = false;
+                        lastSync = System.nanoTime();
+                    }
+                }
+                for (int i = 0; i < batch.size(); i++)
+                    handOn(batch.get(i), positions[i]);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException ex) {
+                log.log(Level.SEVERE, "Could not journal " + batch.size()
+                        + " requests, rejecting them and taking no more requests", ex);
+                failure = ex;
+                dirty = false;
+                outcomes.clear();
+                if (start >= 0)
+                    truncate(start);
+                refuse(batch);
+            }
+            batch.clear();
+        }
+        flushCreditOutcomes();
+    }
+
+    private void flushCreditOutcomes() {
+        if (failure != null || outcomes.isEmpty())
+            return;
+        try {
+            write(List.of());
+            channel.force(false);
+        } catch (IOException ex) {
+            log.log(Level.WARNING, "Could not journal the last credit decisions", ex);
+        }
+    }
+
+    private void truncate(long length) {
+        try {
+            channel.truncate(length);
+        } catch (IOException ex) {
+            log.log(Level.WARNING, "Could not cut the failed batch off the request journal", ex);
+        }
+    }
+
+    /**
+     * Turns down the requests of a batch that was not journaled. Marks are
+     * still handed on: the books only reflect the requests journaled before.
+     */
+    private void refuse(List<Entry> batch) {
+        long position = -1;
+        for (Entry entry : batch) {
+            if (entry.request() == null) {
+                if (position < 0)
+                    position = validLength();
+                handOn(entry, position);
+            } else {
+                reject(entry.request());
+            }
+        }
+    }
+
+    private long validLength() {
+        try {
+            return channel.size();
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+
+    private void reject(Request request) {
+        long orderId;
+        if (request instanceof EnterOrderRq enterOrderRq) {
+            orderId = enterOrderRq.getOrderId();
+        } else if (request instanceof DeleteOrderRq deleteOrderRq) {
+            orderId = deleteOrderRq.getOrderId();
+        } else {
+            log.warning("Dropped " + request + ", it could not be journaled");
+            return;
+        }
+        try {
+            eventPublisher.publish(new OrderRejectedEvent(request.getRequestId(), orderId,
+                    List.of(Message.REQUEST_NOT_JOURNALED)));
+        } catch (RuntimeException ex) {
+            log.log(Level.SEVERE, "Could not reject " + request, ex);
+        }
+    }
+
+    private void handOn(Entry entry, long position) {
+        try {
+            entry.continuation().accept(position);
+        } catch (RuntimeException ex) {
+            log.log(Level.SEVERE, "Could not hand on " + (entry.request() == null ? "a mark" : entry.request()), ex);
+        }
+    }
+
+    private long[] write(List<Entry> batch) throws IOException {
+        long start = channel.position();
+        long[] positions = new long[batch.size()];
+        buffer.clear();
+        CreditOutcome outcome;
+        while ((outcome = outcomes.poll()) != null) {
+            reserve(JournalCodec.encodedSize(outcome));
+            JournalCodec.encode(outcome, buffer);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Entry entry = batch.get(i);
+            positions[i] = start + buffer.position();
+            if (entry.request() == null)
+                continue;
+            reserve(JournalCodec.encodedSize(entry.request()));
+            JournalCodec.encode(entry.request(), buffer);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        return positions;
+    }
+
+    private void reserve(int size) {
+        if (buffer.remaining() < size) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + size));
+            buffer = larger.put(buffer.flip());
+        }
+    }
+
+    @Override
+    public void start() {
+        if (isEnabled()) {
+            outcomes.clear();
+            try {
+                recover();
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Could not recover the request journal " + path, ex);
+            }
+            writer = new Thread(this::writeLoop, "journal-writer");
+            writer.start();
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (writer == null)
+            return;
+        try {
+            pending.put(STOP);
+            writer.join();
+            channel.close();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            log.log(Level.WARNING, "Could not close the request journal", ex);
+        }
+        writer = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 1;
+    }
+}
@@ -0,0 +1,13 @@
+package ir.ramtung.tinyme.messaging;
+
+/**
+ * What publishing an event does when the outgoing event queue is full.
+ */
+public enum BackPressure {
+    /** Waits for the sender to make room, slowing matching down to its pace. */
+    BLOCK,
+    /** Discards the oldest queued event to make room; it is counted as dropped. */
+    DROP_OLDEST,
+    /** Throws {@link ir.ramtung.tinyme.messaging.exception.EventQueueFullException}. */
+    FAIL
+}
@@ -0,0 +1,328 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.EngineClock;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.event.*;
+import ir.ramtung.tinyme.messaging.request.*;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary form of the requests and events exchanged on the queues. A
+ * message is a type byte followed by the fields of that type in a fixed order:
+ * numbers in big-endian binary, enums by ordinal, strings as a length and
+ * their UTF-8 bytes, date-times as epoch seconds and nanoseconds, and lists as
+ * a count and their elements. Nulls are written as a -1 length, ordinal or
+ * count.
+ */
+public final class BinaryCodec {
+    private static final byte ENTER_ORDER = 1;
+    private static final byte DELETE_ORDER = 2;
+    private static final byte CHANGE_MATCH_STATE = 3;
+    private static final byte ORDER_ACCEPTED = 16;
+    private static final byte ORDER_ACTIVATED = 17;
+    private static final byte ORDER_DELETED = 18;
+    private static final byte ORDER_EXECUTED = 19;
+    private static final byte ORDER_REJECTED = 20;
+    private static final byte ORDER_UPDATED = 21;
+    private static final byte OPENING_PRICE = 22;
+    private static final byte SECURITY_STATE_CHANGED = 23;
+    private static final byte TRADE = 24;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final int INITIAL_BUFFER_SIZE = 256;
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_BUFFER_SIZE));
+
+    private BinaryCodec() {
+    }
+
+    public static byte[] encode(Object message) {
+        ByteBuffer buffer = BUFFER.get();
+        while (true) {
+            buffer.clear();
+            try {
+                encode(message, buffer);
+                break;
+            } catch (BufferOverflowException ex) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                BUFFER.set(buffer);
+            }
+        }
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes {@code message} at the position of {@code buffer}, throwing
+     * {@link BufferOverflowException} if it does not fit.
+     */
+    public static void encode(Object message, ByteBuffer buffer) {
+        if (message instanceof Request request)
+            encodeRequest(request, buffer);
+        else if (message instanceof Event event)
+            encodeEvent(event, buffer);
+        else
+            throw new IllegalArgumentException("Cannot encode " + message.getClass().getName());
+    }
+
+    private static void encodeRequest(Request request, ByteBuffer buffer) {
+        if (request instanceof EnterOrderRq enterOrderRq) {
+            buffer.put(ENTER_ORDER);
+            putRequest(buffer, request);
+            putEnum(buffer, enterOrderRq.getRequestType());
+            buffer.putLong(enterOrderRq.getOrderId());
+            putEnum(buffer, enterOrderRq.getSide());
+            buffer.putInt(enterOrderRq.getQuantity());
+            buffer.putInt(enterOrderRq.getPrice());
+            buffer.putLong(enterOrderRq.getBrokerId());
+            buffer.putLong(enterOrderRq.getShareholderId());
+            buffer.putInt(enterOrderRq.getPeakSize());
+            buffer.putInt(enterOrderRq.getMinimumExecutionQuantity());
+            buffer.putInt(enterOrderRq.getStopPrice());
+        } else if (request instanceof DeleteOrderRq deleteOrderRq) {
+            buffer.put(DELETE_ORDER);
+            putRequest(buffer, request);
+            putEnum(buffer, deleteOrderRq.getSide());
+            buffer.putLong(deleteOrderRq.getOrderId());
+        } else if (request instanceof ChangeMatchStateRq changeMatchStateRq) {
+            buffer.put(CHANGE_MATCH_STATE);
+            putRequest(buffer, request);
+            putEnum(buffer, changeMatchStateRq.getState());
+        } else {
+            throw new IllegalArgumentException("Cannot encode " + request.getClass().getName());
+        }
+    }
+
+    private static void encodeEvent(Event event, ByteBuffer buffer) {
+        if (event instanceof OrderAcceptedEvent e) {
+            putOrderEvent(buffer, ORDER_ACCEPTED, event, e.getRequestId(), e.getOrderId());
+        } else if (event instanceof OrderActivatedEvent e) {
+            putOrderEvent(buffer, ORDER_ACTIVATED, event, e.getRequestId(), e.getOrderId());
+        } else if (event instanceof OrderDeletedEvent e) {
+            putOrderEvent(buffer, ORDER_DELETED, event, e.getRequestId(), e.getOrderId());
+        } else if (event instanceof OrderUpdatedEvent e) {
+            putOrderEvent(buffer, ORDER_UPDATED, event, e.getRequestId(), e.getOrderId());
+        } else if (event instanceof OrderExecutedEvent e) {
+            putOrderEvent(buffer, ORDER_EXECUTED, event, e.getRequestId(), e.getOrderId());
+            List<TradeDTO> trades = e.getTrades();
+            buffer.putInt(trades == null ? -1 : trades.size());
+            if (trades != null) {
+                for (TradeDTO trade : trades) {
+                    putString(buffer, trade.securityIsin());
+                    buffer.putInt(trade.price());
+                    buffer.putInt(trade.quantity());
+                    buffer.putLong(trade.buyOrderId());
+                    buffer.putLong(trade.sellOrderId());
+                }
+            }
+        } else if (event instanceof OrderRejectedEvent e) {
+            putOrderEvent(buffer, ORDER_REJECTED, event, e.getRequestId(), e.getOrderId());
+            List<String> errors = e.getErrors();
+            buffer.putInt(errors == null ? -1 : errors.size());
+            if (errors != null)
+                for (String error : errors)
+                    putString(buffer, error);
+        } else if (event instanceof OpeningPriceEvent e) {
+            buffer.put(OPENING_PRICE);
+            putTime(buffer, event.getTimeNanos());
+            putString(buffer, e.getSecurityIsin());
+            buffer.putInt(e.getOpeningPrice());
+            buffer.putInt(e.getTradableQuantity());
+        } else if (event instanceof SecurityStateChangedEvent e) {
+            buffer.put(SECURITY_STATE_CHANGED);
+            putTime(buffer, event.getTimeNanos());
+            putString(buffer, e.getSecurityIsin());
+            putEnum(buffer, e.getState());
+        } else if (event instanceof TradeEvent e) {
+            buffer.put(TRADE);
+            putTime(buffer, event.getTimeNanos());
+            putString(buffer, e.getSecurityIsin());
+            buffer.putInt(e.getPrice());
+            buffer.putInt(e.getQuantity());
+            buffer.putLong(e.getBuyId());
+            buffer.putLong(e.getSellId());
+        } else {
+            throw new IllegalArgumentException("Cannot encode " + event.getClass().getName());
+        }
+    }
+
+    private static void putRequest(ByteBuffer buffer, Request request) {
+        buffer.putLong(request.getRequestId());
+        putString(buffer, request.getSecurityIsin());
+        putDateTime(buffer, request.getEntryTime());
+    }
+
+    private static void putOrderEvent(ByteBuffer buffer, byte type, Event event, long requestId, long orderId) {
+        buffer.put(type);
+        putTime(buffer, event.getTimeNanos());
+        buffer.putLong(requestId);
+        buffer.putLong(orderId);
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static void putDateTime(ByteBuffer buffer, LocalDateTime value) {
+        buffer.putLong(value == null ? 0 : value.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(value == null ? -1 : value.getNano());
+    }
+
+    private static void putTime(ByteBuffer buffer, long nanos) {
+        if (nanos == EngineClock.NO_TIME) {
+            buffer.putLong(0);
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putLong(Math.floorDiv(nanos, NANOS_PER_SECOND));
+        buffer.putInt((int) Math.floorMod(nanos, NANOS_PER_SECOND));
+    }
+
+    private static void putEnum(ByteBuffer buffer, Enum<?> value) {
+        buffer.put((byte) (value == null ? -1 : value.ordinal()));
+    }
+
+    public static Object decode(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Reads the message at the position of {@code buffer}.
+     */
+    public static Object decode(ByteBuffer buffer) {
+        byte type = buffer.get();
+        if (type == ENTER_ORDER || type == DELETE_ORDER || type == CHANGE_MATCH_STATE)
+            return decodeRequest(type, buffer);
+        return decodeEvent(type, buffer);
+    }
+
+    private static Request decodeRequest(byte type, ByteBuffer buffer) {
+        long requestId = buffer.getLong();
+        String isin = getString(buffer);
+        LocalDateTime entryTime = getDateTime(buffer);
+        if (type == ENTER_ORDER) {
+            EnterOrderRq enterOrderRq = new EnterOrderRq();
+            enterOrderRq.setRequestType(getEnum(buffer, OrderEntryType.values()));
+            enterOrderRq.setOrderId(buffer.getLong());
+            enterOrderRq.setSide(getEnum(buffer, Side.values()));
+            enterOrderRq.setQuantity(buffer.getInt());
+            enterOrderRq.setPrice(buffer.getInt());
+            enterOrderRq.setBrokerId(buffer.getLong());
+            enterOrderRq.setShareholderId(buffer.getLong());
+            enterOrderRq.setPeakSize(buffer.getInt());
+            enterOrderRq.setMinimumExecutionQuantity(buffer.getInt());
+            enterOrderRq.setStopPrice(buffer.getInt());
+            return withCommon(enterOrderRq, requestId, isin, entryTime);
+        }
+        if (type == DELETE_ORDER) {
+            DeleteOrderRq deleteOrderRq = new DeleteOrderRq();
+            deleteOrderRq.setSide(getEnum(buffer, Side.values()));
+            deleteOrderRq.setOrderId(buffer.getLong());
+            return withCommon(deleteOrderRq, requestId, isin, entryTime);
+        }
+        ChangeMatchStateRq changeMatchStateRq = new ChangeMatchStateRq();
+        changeMatchStateRq.setState(getEnum(buffer, MatchingState.values()));
+        return withCommon(changeMatchStateRq, requestId, isin, entryTime);
+    }
+
+    private static Request withCommon(Request request, long requestId, String isin, LocalDateTime entryTime) {
+        request.setRequestId(requestId);
+        request.setSecurityIsin(isin);
+        request.setEntryTime(entryTime);
+        return request;
+    }
+
+    private static Event decodeEvent(byte type, ByteBuffer buffer) {
+        long time = getTime(buffer);
+        Event event;
+        if (type == OPENING_PRICE) {
+            event = new OpeningPriceEvent(getString(buffer), buffer.getInt(), buffer.getInt());
+        } else if (type == SECURITY_STATE_CHANGED) {
+            event = new SecurityStateChangedEvent(getString(buffer), getEnum(buffer, MatchingState.values()));
+        } else if (type == TRADE) {
+            event = new TradeEvent(getString(buffer), buffer.getInt(), buffer.getInt(), buffer.getLong(),
+                    buffer.getLong());
+        } else {
+            long requestId = buffer.getLong();
+            long orderId = buffer.getLong();
+            event = switch (type) {
+                case ORDER_ACCEPTED -> new OrderAcceptedEvent(requestId, orderId);
+                case ORDER_ACTIVATED -> new OrderActivatedEvent(requestId, orderId);
+                case ORDER_DELETED -> new OrderDeletedEvent(requestId, orderId);
+                case ORDER_UPDATED -> new OrderUpdatedEvent(requestId, orderId);
+                case ORDER_EXECUTED -> new OrderExecutedEvent(requestId, orderId, getTrades(buffer));
+                case ORDER_REJECTED -> new OrderRejectedEvent(requestId, orderId, getStrings(buffer));
+                default -> throw new IllegalArgumentException("Unknown message type " + type);
+            };
+        }
+        event.setTimeNanos(time);
+        return event;
+    }
+
+    private static List<TradeDTO> getTrades(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0)
+            return null;
+        List<TradeDTO> trades = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            trades.add(new TradeDTO(getString(buffer), buffer.getInt(), buffer.getInt(), buffer.getLong(),
+                    buffer.getLong()));
+        return trades;
+    }
+
+    private static List<String> getStrings(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0)
+            return null;
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            strings.add(getString(buffer));
+        return strings;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0)
+            return null;
+        if (!buffer.hasArray()) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static long getTime(ByteBuffer buffer) {
+        long epochSecond = buffer.getLong();
+        int nano = buffer.getInt();
+        return nano < 0 ? EngineClock.NO_TIME : epochSecond * NANOS_PER_SECOND + nano;
+    }
+
+    private static LocalDateTime getDateTime(ByteBuffer buffer) {
+        long epochSecond = buffer.getLong();
+        int nano = buffer.getInt();
+        return nano < 0 ? null : LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+    }
+
+    private static <E extends Enum<E>> E getEnum(ByteBuffer buffer, E[] values) {
+        byte ordinal = buffer.get();
+        return ordinal < 0 ? null : values[ordinal];
+    }
+}
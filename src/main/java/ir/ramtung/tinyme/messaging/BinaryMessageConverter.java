@@ -0,0 +1,36 @@
+package ir.ramtung.tinyme.messaging;
+
+import jakarta.jms.BytesMessage;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.Session;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+
+/**
+ * Converts requests and events to bytes messages in the {@link BinaryCodec}
+ * form. The class name is set in the {@code _type} property as the JSON
+ * converter does, so listeners select message types the same way with either.
+ */
+public class BinaryMessageConverter implements MessageConverter {
+    @Override
+    public Message toMessage(Object object, Session session) throws JMSException {
+        BytesMessage message = session.createBytesMessage();
+        message.writeBytes(BinaryCodec.encode(object));
+        message.setStringProperty(MessagingConfig.TYPE_PROPERTY, object.getClass().getName());
+        return message;
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws JMSException {
+        if (!(message instanceof BytesMessage bytesMessage))
+            throw new MessageConversionException("Expected a bytes message, got " + message.getClass().getName());
+        byte[] bytes = new byte[(int) bytesMessage.getBodyLength()];
+        bytesMessage.readBytes(bytes);
+        try {
+            return BinaryCodec.decode(bytes);
+        } catch (RuntimeException ex) {
+            throw new MessageConversionException("Could not decode a " + bytes.length + "-byte message", ex);
+        }
+    }
+}
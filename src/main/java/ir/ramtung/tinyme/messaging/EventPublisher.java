@@ -1,25 +1,134 @@
 package ir.ramtung.tinyme.messaging;
 
+import ir.ramtung.tinyme.audit.AuditLog;
 import ir.ramtung.tinyme.messaging.event.Event;
+import jakarta.jms.Destination;
+import jakarta.jms.MessageProducer;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
 import java.util.logging.Logger;
 
+/**
+ * Publishes events on the response queue. With {@code publisher.async} set,
+ * events are handed to a bounded {@link EventQueue} and sent by its sender
+ * thread in batches, each batch with one session and producer, committed
+ * together when the template's sessions are transacted. Otherwise, and before
+ * the publisher starts or after it stops, events are sent right away on the
+ * publishing thread.
+ * <p>
+ * The publisher stops after matching, so the events of requests still being
+ * processed on shutdown are sent. Published events are recorded in the
+ * {@link AuditLog}.
+ */
 @Component
-public class EventPublisher {
+public class EventPublisher implements SmartLifecycle {
     private final Logger log = Logger.getLogger(this.getClass().getName());
     private final JmsTemplate jmsTemplate;
+    private final AuditLog auditLog;
     @Value("${responseQueue}")
     private String responseQueue;
+    @Value("${publisher.async:false}")
+    private boolean async;
+    @Value("${publisher.capacity:65536}")
+    private int capacity;
+    @Value("${publisher.maxBatch:256}")
+    private int maxBatch;
+    @Value("${publisher.backPressure:BLOCK}")
+    private BackPressure backPressure;
+    private volatile EventQueue queue;
+    private volatile boolean running;
 
-    public EventPublisher(JmsTemplate jmsTemplate) {
+    public EventPublisher(JmsTemplate jmsTemplate, AuditLog auditLog) {
         this.jmsTemplate = jmsTemplate;
+        this.auditLog = auditLog;
     }
 
     public void publish(Event event) {
-        log.info("Published : " + event);
-        jmsTemplate.convertAndSend(responseQueue, event);
+        auditLog.published(event);
+        EventQueue current = queue;
+        if (current != null) {
+            current.offer(event);
+        } else {
+            jmsTemplate.convertAndSend(responseQueue, event);
+        }
+    }
+
+    /**
+     * Publishes events that belong together, in order. Sent right away they
+     * share one session and producer, like a batch of the sender thread.
+     */
+    public void publish(List<Event> events) {
+        if (events.isEmpty())
+            return;
+        events.forEach(auditLog::published);
+        EventQueue current = queue;
+        if (current != null) {
+            events.forEach(current::offer);
+        } else {
+            send(events);
+        }
+    }
+
+    private void send(List<Event> events) {
+        jmsTemplate.execute(session -> {
+            Destination destination = jmsTemplate.getDestinationResolver()
+                    .resolveDestinationName(session, responseQueue, jmsTemplate.isPubSubDomain());
+            MessageConverter converter = jmsTemplate.getMessageConverter();
+            MessageProducer producer = session.createProducer(destination);
+            try {
+                for (Event event : events)
+                    producer.send(converter.toMessage(event, session));
+                JmsUtils.commitIfNecessary(session);
+            } finally {
+                JmsUtils.closeMessageProducer(producer);
+            }
+            return null;
+        }, true);
+    }
+
+    /**
+     * Returns the metrics of the response queue, or null when publishing is
+     * synchronous.
+     */
+    public EventQueue.Metrics metrics() {
+        EventQueue current = queue;
+        return current == null ? null : current.metrics();
+    }
+
+    @Override
+    public void start() {
+        if (async) {
+            EventQueue started = new EventQueue(responseQueue, capacity, maxBatch, backPressure, this::send);
+            started.start();
+            queue = started;
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        EventQueue stopped = queue;
+        queue = null;
+        if (stopped != null) {
+            stopped.stop();
+            log.info("Event publisher stopped: " + stopped.metrics());
+        }
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 4;
     }
 }
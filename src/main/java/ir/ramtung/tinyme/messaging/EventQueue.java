@@ -0,0 +1,175 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.exception.EventQueueFullException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded queue of events waiting to be sent to one destination. A dedicated
+ * sender thread takes whatever events are waiting, up to a batch, and hands
+ * them to the sink in the order they were offered. What offering does when the
+ * queue is full is set by its {@link BackPressure}.
+ */
+public class EventQueue {
+    public record Metrics(String queue, int size, int capacity, int highWaterMark, long sent, long dropped,
+            long rejected, long failed, long batches, long meanLatencyNanos, long maxLatencyNanos) {
+    }
+
+    private record Pending(Event event, long enqueuedAt) {
+    }
+
+    private static final Pending STOP = new Pending(null, 0);
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final String name;
+    private final int capacity;
+    private final int maxBatch;
+    private final BackPressure backPressure;
+    private final Consumer<List<Event>> sink;
+    private final BlockingQueue<Pending> pending;
+    private final AtomicInteger highWaterMark = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile long sent;
+    private volatile long failed;
+    private volatile long batches;
+    private volatile long totalLatencyNanos;
+    private volatile long maxLatencyNanos;
+    private volatile boolean running;
+    private Thread sender;
+
+    public EventQueue(String name, int capacity, int maxBatch, BackPressure backPressure,
+            Consumer<List<Event>> sink) {
+        this.name = name;
+        this.capacity = capacity;
+        this.maxBatch = maxBatch;
+        this.backPressure = backPressure;
+        this.sink = sink;
+        this.pending = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Queues the event for sending, applying the back-pressure policy when
+     * the queue is full. Must not be called once {@link #stop()} has begun;
+     * an offer racing with it never drops the stop marker, so the sender
+     * still stops.
+     */
+    public void offer(Event event) {
+        if (!running)
+            throw new IllegalStateException("Event queue " + name + " is not running");
+        Pending entry = new Pending(event, System.nanoTime());
+        if (backPressure == BackPressure.BLOCK) {
+            put(entry);
+        } else if (backPressure == BackPressure.DROP_OLDEST) {
+            while (!pending.offer(entry)) {
+                Pending oldest = pending.poll();
+                if (oldest == STOP) {
+                    dropped.increment();
+                    put(STOP);
+                    return;
+                }
+                if (oldest != null)
+                    dropped.increment();
+            }
+        } else if (!pending.offer(entry)) {
+            rejected.increment();
+            throw new EventQueueFullException(name);
+        }
+        highWaterMark.accumulateAndGet(pending.size(), Math::max);
+    }
+
+    private void put(Pending entry) {
+        try {
+            pending.put(entry);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while publishing", ex);
+        }
+    }
+
+    private void sendLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        List<Event> events = new ArrayList<>(maxBatch);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            pending.drainTo(batch, maxBatch - 1);
+            int stop = batch.indexOf(STOP);
+            if (stop >= 0) {
+                batch.subList(stop, batch.size()).clear();
+                stopping = true;
+            }
+            if (!batch.isEmpty())
+                send(batch, events);
+            batch.clear();
+            events.clear();
+        }
+    }
+
+    private void send(List<Pending> batch, List<Event> events) {
+        for (Pending entry : batch)
+            events.add(entry.event());
+        try {
+            sink.accept(events);
+        } catch (RuntimeException ex) {
+            failed += batch.size();
+            log.log(Level.SEVERE, "Could not send " + batch.size() + " events to " + name, ex);
+            return;
+        }
+        long now = System.nanoTime();
+        long latency = 0;
+        long max = maxLatencyNanos;
+        for (Pending entry : batch) {
+            long entryLatency = now - entry.enqueuedAt();
+            latency += entryLatency;
+            max = Math.max(max, entryLatency);
+        }
+        totalLatencyNanos += latency;
+        maxLatencyNanos = max;
+        sent += batch.size();
+        batches++;
+    }
+
+    public void start() {
+        running = true;
+        sender = new Thread(this::sendLoop, "event-sender-" + name);
+        sender.start();
+    }
+
+    /**
+     * Sends the events already queued and stops the sender.
+     */
+    public void stop() {
+        running = false;
+        if (sender == null)
+            return;
+        try {
+            pending.put(STOP);
+            sender.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        sender = null;
+    }
+
+    public Metrics metrics() {
+        long sentEvents = sent;
+        return new Metrics(name, pending.size(), capacity, highWaterMark.get(), sentEvents, dropped.sum(),
+                rejected.sum(), failed, batches, sentEvents == 0 ? 0 : totalLatencyNanos / sentEvents,
+                maxLatencyNanos);
+    }
+}
@@ -26,5 +26,6 @@ public class Message {
     public static final String STOPLIMIT_ORDER_IN_AUCTION_MODE_ERROR = "new stopLimit order is prohibited in auction mode";
     public static final String STOPLIMIT_ORDER_IN_AUCTION_MODE_CANT_REMOVE = "stopLimit order in auction mode can not be deleted";
     public static final String STOPLIMIT_ORDER_IN_AUCTION_MODE_CANT_UPDATE = "stopLimit order in auction mode can not be updated";
+    public static final String REQUEST_NOT_JOURNALED = "Request could not be journaled";
 
 }
@@ -1,18 +1,62 @@
 package ir.ramtung.tinyme.messaging;
 
+import jakarta.jms.ConnectionFactory;
+import org.apache.activemq.artemis.jms.client.ActiveMQConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jms.DefaultJmsListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.config.DefaultJmsListenerContainerFactory;
+import org.springframework.jms.connection.DelegatingConnectionFactory;
+import org.springframework.jms.connection.SingleConnectionFactory;
 import org.springframework.jms.support.converter.MappingJackson2MessageConverter;
 import org.springframework.jms.support.converter.MessageConverter;
 import org.springframework.jms.support.converter.MessageType;
 
 @Configuration
 public class MessagingConfig {
+    public static final String TYPE_PROPERTY = "_type";
+
     @Bean
-    public MessageConverter jacksonJmsMessageConverter() {
+    public MessageConverter jmsMessageConverter(@Value("${messaging.wireFormat:JSON}") WireFormat wireFormat) {
+        if (wireFormat == WireFormat.BINARY)
+            return new BinaryMessageConverter();
         MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
         converter.setTargetType(MessageType.TEXT);
-        converter.setTypeIdPropertyName("_type");
+        converter.setTypeIdPropertyName(TYPE_PROPERTY);
         return converter;
     }
+
+    /**
+     * Container factory of the request listener. {@code dispatcher.prefetch}
+     * sets how many bytes of messages the broker pushes to the consumer ahead
+     * of time, -1 meaning unbounded, and {@code dispatcher.batchSize} how many
+     * messages a consumer receives in a row before giving its thread back.
+     * Requests must be journaled in arrival order, so the listener has one
+     * consumer unless {@code dispatcher.concurrency} says otherwise.
+     */
+    @Bean
+    public DefaultJmsListenerContainerFactory requestListenerContainerFactory(
+            DefaultJmsListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            @Value("${dispatcher.prefetch:1048576}") int prefetch,
+            @Value("${dispatcher.batchSize:64}") int batchSize,
+            @Value("${dispatcher.concurrency:1}") String concurrency) {
+        if (unwrap(connectionFactory) instanceof ActiveMQConnectionFactory artemisConnectionFactory)
+            artemisConnectionFactory.setConsumerWindowSize(prefetch);
+        DefaultJmsListenerContainerFactory factory = new DefaultJmsListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setMaxMessagesPerTask(batchSize);
+        factory.setConcurrency(concurrency);
+        return factory;
+    }
+
+    private static ConnectionFactory unwrap(ConnectionFactory connectionFactory) {
+        if (connectionFactory instanceof SingleConnectionFactory singleConnectionFactory
+                && singleConnectionFactory.getTargetConnectionFactory() != null)
+            return unwrap(singleConnectionFactory.getTargetConnectionFactory());
+        if (connectionFactory instanceof DelegatingConnectionFactory delegatingConnectionFactory
+                && delegatingConnectionFactory.getTargetConnectionFactory() != null)
+            return unwrap(delegatingConnectionFactory.getTargetConnectionFactory());
+        return connectionFactory;
+    }
 }
@@ -1,37 +1,90 @@
 package ir.ramtung.tinyme.messaging;
 
+import ir.ramtung.tinyme.audit.AuditLog;
+import ir.ramtung.tinyme.domain.entity.CreditDecisions;
 import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.domain.service.MatchingShards;
 import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.journal.RequestJournal;
+import ir.ramtung.tinyme.messaging.request.Request;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
 import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.support.converter.MessageConverter;
 import org.springframework.stereotype.Component;
 import ir.ramtung.tinyme.messaging.request.ChangeMatchStateRq;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
+/**
+ * Receives every request on the request queue with a single listener and
+ * routes it by the type in its {@code _type} property, through a table built
+ * once, to the handler of that type. Messages of other types are counted and
+ * dropped.
+ */
 @Component
 public class RequestDispatcher {
+    private record Route(Class<? extends Request> type, Consumer<Request> handler, LongAdder received) {
+    }
+
     private final Logger log = Logger.getLogger(this.getClass().getName());
     private final OrderHandler orderHandler;
+    private final MatchingShards matchingShards;
+    private final RequestJournal requestJournal;
+    private final MessageConverter messageConverter;
+    private final AuditLog auditLog;
+    private final Map<String, Route> routes = new LinkedHashMap<>();
+    private final LongAdder unknown = new LongAdder();
 
-    public RequestDispatcher(OrderHandler orderHandler) {
+    public RequestDispatcher(OrderHandler orderHandler, MatchingShards matchingShards,
+            RequestJournal requestJournal, MessageConverter messageConverter, AuditLog auditLog) {
         this.orderHandler = orderHandler;
+        this.matchingShards = matchingShards;
+        this.requestJournal = requestJournal;
+        this.messageConverter = messageConverter;
+        this.auditLog = auditLog;
+        route(EnterOrderRq.class, this.orderHandler::handleEnterOrder);
+        route(DeleteOrderRq.class, this.orderHandler::handleDeleteOrder);
+        route(ChangeMatchStateRq.class, this.orderHandler::handleChangeMatchStateRq);
     }
 
-    @JmsListener(destination = "${requestQueue}", selector = "_type='ir.ramtung.tinyme.messaging.request.EnterOrderRq'")
-    public void receiveEnterOrderRq(EnterOrderRq enterOrderRq) {
-        log.info("Received message: " + enterOrderRq);
-        orderHandler.handleEnterOrder(enterOrderRq);
+    private <T extends Request> void route(Class<T> type, Consumer<T> handler) {
+        routes.put(type.getName(), new Route(type, request -> handler.accept(type.cast(request)), new LongAdder()));
     }
 
-    @JmsListener(destination = "${requestQueue}", selector = "_type='ir.ramtung.tinyme.messaging.request.DeleteOrderRq'")
-    public void receiveDeleteOrderRq(DeleteOrderRq deleteOrderRq) {
-        log.info("Received message: " + deleteOrderRq);
-        orderHandler.handleDeleteOrder(deleteOrderRq);
+    @JmsListener(destination = "${requestQueue}", containerFactory = "requestListenerContainerFactory")
+    public void receive(Message message) throws JMSException {
+        String type = message.getStringProperty(MessagingConfig.TYPE_PROPERTY);
+        Route route = type == null ? null : routes.get(type);
+        if (route == null) {
+            unknown.increment();
+            log.warning("Dropped a message of unknown type " + type);
+            return;
+        }
+        Request rq = route.type().cast(messageConverter.fromMessage(message));
+        route.received().increment();
+        auditLog.received(rq);
+        requestJournal.append(rq, position -> matchingShards.execute(rq.getSecurityIsin(), () -> {
+            CreditDecisions decisions = new CreditDecisions();
+            decisions.apply(() -> route.handler().accept(rq));
+            requestJournal.recordCreditDecisions(position, decisions);
+        }));
     }
 
-    @JmsListener(destination = "${requestQueue}", selector = "_type='ir.ramtung.tinyme.messaging.request.ChangeMatchStateRq'")
-    public void receiveChangeMatchStateRq(ChangeMatchStateRq changeMatchStateRq) {
-        log.info("Received message: " + changeMatchStateRq);
-        orderHandler.handleChangeMatchStateRq(changeMatchStateRq);
+    /**
+     * The number of requests received of each type, by simple class name,
+     * and of messages of unknown type under {@code "unknown"}.
+     */
+    public Map<String, Long> receivedCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Route route : routes.values())
+            counts.put(route.type().getSimpleName(), route.received().sum());
+        counts.put("unknown", unknown.sum());
+        return counts;
     }
 }
@@ -0,0 +1,11 @@
+package ir.ramtung.tinyme.messaging;
+
+/**
+ * How requests and events are written on the queues.
+ */
+public enum WireFormat {
+    /** Text messages holding Jackson JSON. */
+    JSON,
+    /** Bytes messages holding the {@link BinaryCodec} form. */
+    BINARY
+}
@@ -1,26 +1,42 @@
 package ir.ramtung.tinyme.messaging.event;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
 import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
+import ir.ramtung.tinyme.domain.entity.EngineClock;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
+import lombok.Setter;
 
 import java.time.LocalDateTime;
 
+/**
+ * The time of an event is kept as {@link EngineClock} nanoseconds and only
+ * turned into a {@link LocalDateTime} when it is read.
+ */
 @EqualsAndHashCode
 public abstract class Event {
-    @Getter
-    @JsonSerialize(using = LocalDateTimeSerializer.class)
-    @JsonDeserialize(using = LocalDateTimeDeserializer.class)
-    private final LocalDateTime time;
+    @Getter(onMethod_ = @JsonIgnore)
+    @Setter(onMethod_ = @JsonIgnore)
+    private long timeNanos;
 
     public Event() {
-        time = LocalDateTime.now();
+        timeNanos = EngineClock.nanoTime();
     }
 
     public Event(LocalDateTime time) {
-        this.time = time;
+        setTime(time);
+    }
+
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    public LocalDateTime getTime() {
+        return EngineClock.toLocalDateTime(timeNanos);
+    }
+
+    @JsonDeserialize(using = LocalDateTimeDeserializer.class)
+    public void setTime(LocalDateTime time) {
+        timeNanos = EngineClock.toNanos(time);
     }
 }
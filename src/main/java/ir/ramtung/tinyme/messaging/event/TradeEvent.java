@@ -1,5 +1,6 @@
 package ir.ramtung.tinyme.messaging.event;
 
+import ir.ramtung.tinyme.domain.entity.Trade;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -16,4 +17,9 @@ public class TradeEvent extends Event {
     private long buyId;
     private long sellId;
 
+    public TradeEvent(Trade trade) {
+        this(trade.getSecurity().getIsin(), trade.getPrice(), trade.getQuantity(), trade.getBuyOrderId(),
+                trade.getSellOrderId());
+    }
+
 }
@@ -0,0 +1,7 @@
+package ir.ramtung.tinyme.messaging.exception;
+
+public class EventQueueFullException extends RuntimeException {
+    public EventQueueFullException(String queue) {
+        super("Event queue " + queue + " is full");
+    }
+}
@@ -0,0 +1,279 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary counterpart of the CSV persistence files, holding the same fields.
+ * Every file is a magic number, a record count and the records, with numbers
+ * in big-endian binary and strings as a length and their UTF-8 bytes. Files
+ * are memory-mapped and read in place, so loading does no text parsing.
+ * <p>
+ * The order book file is grouped by security, with the buy and then the sell
+ * queue in queue order, so loading appends each order at the end of its price
+ * level, followed by the inactive buy and sell stop-limit orders in activation
+ * order. Order book files written before stop-limit orders were kept have no
+ * such section and are still read.
+ */
+final class BinaryPersistence {
+    private static final int BROKERS = 0x544D4231;
+    private static final int SHAREHOLDERS = 0x544D5331;
+    private static final int SECURITIES = 0x544D4331;
+    private static final int POSITIONS = 0x544D5031;
+    private static final int ORDERS_WITHOUT_STOP_LIMITS = 0x544D4F31;
+    private static final int ORDERS = 0x544D4F32;
+
+    @FunctionalInterface
+    private interface RecordWriter<T> {
+        void write(DataOutputStream out, T record) throws IOException;
+    }
+
+    private BinaryPersistence() {
+    }
+
+    private static <T> void write(Path path, int magic, List<T> records, RecordWriter<T> writer) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path),
+                1 << 16))) {
+            out.writeInt(magic);
+            out.writeInt(records.size());
+            for (T record : records)
+                writer.write(out, record);
+        }
+    }
+
+    private static <T> List<T> toList(Iterable<? extends T> iterable) {
+        List<T> list = new ArrayList<>();
+        iterable.forEach(list::add);
+        return list;
+    }
+
+    private static ByteBuffer map(Path path, int... magics) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int magic = buffer.getInt();
+            for (int expected : magics)
+                if (magic == expected)
+                    return buffer;
+            throw new IOException(path + " is not a " + path.getFileName() + " file");
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeBrokers(Path path, Iterable<? extends Broker> brokers) throws IOException {
+        write(path, BROKERS, toList(brokers), (out, broker) -> {
+            out.writeLong(broker.getBrokerId());
+            writeString(out, broker.getName());
+            out.writeLong(broker.getCredit());
+        });
+    }
+
+    static void readBrokers(Path path, BrokerRepository brokerRepository) throws IOException {
+        ByteBuffer buffer = map(path, BROKERS);
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            brokerRepository.addBroker(Broker.builder()
+                    .brokerId(buffer.getLong())
+                    .name(readString(buffer))
+                    .credit(buffer.getLong())
+                    .build());
+        }
+    }
+
+    static void writeShareholders(Path path, Iterable<? extends Shareholder> shareholders) throws IOException {
+        write(path, SHAREHOLDERS, toList(shareholders), (out, shareholder) -> {
+            out.writeLong(shareholder.getShareholderId());
+            writeString(out, shareholder.getName());
+        });
+    }
+
+    static void readShareholders(Path path, ShareholderRepository shareholderRepository) throws IOException {
+        ByteBuffer buffer = map(path, SHAREHOLDERS);
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            shareholderRepository.addShareholder(Shareholder.builder()
+                    .shareholderId(buffer.getLong())
+                    .name(readString(buffer))
+                    .build());
+        }
+    }
+
+    static void writeSecurities(Path path, Iterable<? extends Security> securities) throws IOException {
+        write(path, SECURITIES, toList(securities), (out, security) -> {
+            writeString(out, security.getIsin());
+            out.writeInt(security.getTickSize());
+            out.writeInt(security.getLotSize());
+        });
+    }
+
+    static void readSecurities(Path path, SecurityRepository securityRepository) throws IOException {
+        ByteBuffer buffer = map(path, SECURITIES);
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            securityRepository.addSecurity(Security.builder()
+                    .isin(readString(buffer))
+                    .tickSize(buffer.getInt())
+                    .lotSize(buffer.getInt())
+                    .build());
+        }
+    }
+
+    static void writePositions(Path path, Iterable<? extends Shareholder> shareholders) throws IOException {
+        write(path, POSITIONS, toList(shareholders), (out, shareholder) -> {
+            out.writeLong(shareholder.getShareholderId());
+            out.writeInt(shareholder.getPositions().size());
+            for (var entry : shareholder.getPositions().entrySet()) {
+                writeString(out, entry.getKey().getIsin());
+                out.writeInt(entry.getValue());
+            }
+        });
+    }
+
+    static void readPositions(Path path, ShareholderRepository shareholderRepository,
+            SecurityRepository securityRepository) throws IOException {
+        ByteBuffer buffer = map(path, POSITIONS);
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            Shareholder shareholder = shareholderRepository.findShareholderById(buffer.getLong());
+            int positions = buffer.getInt();
+            for (int j = 0; j < positions; j++)
+                shareholder.incPosition(securityRepository.findSecurityByIsin(readString(buffer)), buffer.getInt());
+        }
+    }
+
+    static void writeOrderBooks(Path path, Iterable<? extends Security> securities) throws IOException {
+        write(path, ORDERS, toList(securities), (out, security) -> {
+            writeString(out, security.getIsin());
+            writeQueue(out, security.getOrderBook().getQueue(Side.BUY).toList());
+            writeQueue(out, security.getOrderBook().getQueue(Side.SELL).toList());
+            writeStopLimitOrders(out, security.getOrderBook().getInactiveStopLimitOrders(Side.BUY));
+            writeStopLimitOrders(out, security.getOrderBook().getInactiveStopLimitOrders(Side.SELL));
+        });
+    }
+
+    private static void writeStopLimitOrders(DataOutputStream out, StopTriggerBook orders) throws IOException {
+        out.writeInt(orders.size());
+        for (Order order : orders) {
+            out.writeLong(order.getOrderId());
+            out.writeInt(order.getQuantity());
+            out.writeInt(order.getPrice());
+            out.writeLong(order.getBroker().getBrokerId());
+            out.writeLong(order.getShareholder().getShareholderId());
+            out.writeLong(order.getEntryTime().toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(order.getEntryTime().getNano());
+            out.writeLong(order.getRequestId());
+            out.writeDouble(order.getStopPrice());
+        }
+    }
+
+    private static void writeQueue(DataOutputStream out, List<Order> orders) throws IOException {
+        out.writeInt(orders.size());
+        for (Order order : orders) {
+            out.writeLong(order.getOrderId());
+            out.writeInt(order.getTotalQuantity());
+            out.writeInt(order.getPrice());
+            out.writeLong(order.getBroker().getBrokerId());
+            out.writeLong(order.getShareholder().getShareholderId());
+            out.writeLong(order.getEntryTime().toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(order.getEntryTime().getNano());
+            out.writeInt(order.getMinimumExecutionQuantity());
+            if (order instanceof IcebergOrder icebergOrder) {
+                out.writeInt(icebergOrder.getPeakSize());
+                out.writeInt(icebergOrder.getDisplayedQuantity());
+            } else {
+                out.writeInt(0);
+                out.writeInt(0);
+            }
+        }
+    }
+
+    static void readOrderBooks(Path path, SecurityRepository securityRepository, BrokerRepository brokerRepository,
+            ShareholderRepository shareholderRepository) throws IOException {
+        ByteBuffer buffer = map(path, ORDERS, ORDERS_WITHOUT_STOP_LIMITS);
+        boolean stopLimits = buffer.getInt(0) == ORDERS;
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            Security security = securityRepository.findSecurityByIsin(readString(buffer));
+            readQueue(buffer, security, Side.BUY, brokerRepository, shareholderRepository);
+            readQueue(buffer, security, Side.SELL, brokerRepository, shareholderRepository);
+            if (stopLimits) {
+                readStopLimitOrders(buffer, security, Side.BUY, brokerRepository, shareholderRepository);
+                readStopLimitOrders(buffer, security, Side.SELL, brokerRepository, shareholderRepository);
+            }
+        }
+    }
+
+    private static void readStopLimitOrders(ByteBuffer buffer, Security security, Side side,
+            BrokerRepository brokerRepository, ShareholderRepository shareholderRepository) {
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            long orderId = buffer.getLong();
+            int quantity = buffer.getInt();
+            int price = buffer.getInt();
+            Broker broker = brokerRepository.findBrokerById(buffer.getLong());
+            Shareholder shareholder = shareholderRepository.findShareholderById(buffer.getLong());
+            LocalDateTime entryTime = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+            long requestId = buffer.getLong();
+            StopLimitOrder order = new StopLimitOrder(orderId, security, side, quantity, price, broker, shareholder,
+                    entryTime, buffer.getDouble(), OrderStatus.QUEUED);
+            order.setRequestId(requestId);
+            security.getOrderBook().enqueueInactiveStopLimitOrder(order);
+        }
+    }
+
+    private static void readQueue(ByteBuffer buffer, Security security, Side side, BrokerRepository brokerRepository,
+            ShareholderRepository shareholderRepository) {
+        OrderBook orderBook = security.getOrderBook();
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            long orderId = buffer.getLong();
+            int quantity = buffer.getInt();
+            int price = buffer.getInt();
+            Broker broker = brokerRepository.findBrokerById(buffer.getLong());
+            Shareholder shareholder = shareholderRepository.findShareholderById(buffer.getLong());
+            LocalDateTime entryTime = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+            int minimumExecutionQuantity = buffer.getInt();
+            int peakSize = buffer.getInt();
+            int displayedQuantity = buffer.getInt();
+            if (peakSize == 0) {
+                orderBook.enqueue(new Order(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                        OrderStatus.QUEUED, minimumExecutionQuantity));
+            } else {
+                IcebergOrder order = new IcebergOrder(orderId, security, side, quantity, price, broker, shareholder,
+                        entryTime, peakSize, displayedQuantity, OrderStatus.QUEUED, minimumExecutionQuantity);
+                orderBook.enqueue(order);
+                order.setDisplayedQuantity(displayedQuantity);
+            }
+        }
+    }
+}
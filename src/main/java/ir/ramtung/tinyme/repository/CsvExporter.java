@@ -0,0 +1,218 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the repositories as the CSV persistence files of {@code DataLoader}
+ * for bulk exports. Rows are encoded straight into a direct buffer that is
+ * written to the file channel whenever it fills up.
+ */
+final class CsvExporter {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    record FileReport(String file, long rows, long nanos) {
+        double rowsPerSecond() {
+            return nanos == 0 ? 0 : rows * 1e9 / nanos;
+        }
+    }
+
+    private static class RowWriter implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private final StringBuilder row = new StringBuilder(256);
+        private boolean rowStarted;
+        private long rows;
+
+        RowWriter(Path path, String header) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            row.append(header);
+            endRow();
+            rows = 0;
+        }
+
+        private void separate() {
+            if (rowStarted)
+                row.append(',');
+            rowStarted = true;
+        }
+
+        RowWriter field(String value) {
+            separate();
+            if (value == null)
+                return this;
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0)
+                row.append('"').append(value.replace("\"", "\"\"")).append('"');
+            else
+                row.append(value);
+            return this;
+        }
+
+        RowWriter field(long value) {
+            separate();
+            row.append(value);
+            return this;
+        }
+
+        void endRow() throws IOException {
+            row.append('\n');
+            CharBuffer chars = CharBuffer.wrap(row);
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if (result.isOverflow())
+                    flush();
+                else if (result.isUnderflow())
+                    break;
+                else
+                    result.throwException();
+            }
+            encoder.reset();
+            row.setLength(0);
+            rowStarted = false;
+            rows++;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private final BrokerRepository brokerRepository;
+    private final ShareholderRepository shareholderRepository;
+    private final SecurityRepository securityRepository;
+
+    CsvExporter(BrokerRepository brokerRepository, ShareholderRepository shareholderRepository,
+            SecurityRepository securityRepository) {
+        this.brokerRepository = brokerRepository;
+        this.shareholderRepository = shareholderRepository;
+        this.securityRepository = securityRepository;
+    }
+
+    /**
+     * Writes the five persistence files into {@code directory} and returns a
+     * report for each of them.
+     */
+    List<FileReport> exportAll(Path directory) throws IOException {
+        List<FileReport> reports = new ArrayList<>();
+        reports.add(exportBrokers(directory.resolve("broker.csv")));
+        reports.add(exportShareholders(directory.resolve("shareholder.csv")));
+        reports.add(exportSecurities(directory.resolve("security.csv")));
+        reports.add(exportPositions(directory.resolve("position.csv")));
+        reports.add(exportOrderBooks(directory.resolve("orderbook.csv")));
+        return reports;
+    }
+
+    private static FileReport report(Path path, RowWriter writer, long start) {
+        return new FileReport(path.getFileName().toString(), writer.rows, System.nanoTime() - start);
+    }
+
+    private FileReport exportBrokers(Path path) throws IOException {
+        long start = System.nanoTime();
+        try (RowWriter writer = new RowWriter(path, "brokerId,name,credit")) {
+            for (Broker broker : brokerRepository.allBrokers()) {
+                writer.field(broker.getBrokerId()).field(broker.getName()).field(broker.getCredit());
+                writer.endRow();
+            }
+            return report(path, writer, start);
+        }
+    }
+
+    private FileReport exportShareholders(Path path) throws IOException {
+        long start = System.nanoTime();
+        try (RowWriter writer = new RowWriter(path, "shareholderId,name")) {
+            for (Shareholder shareholder : shareholderRepository.allShareholders()) {
+                writer.field(shareholder.getShareholderId()).field(shareholder.getName());
+                writer.endRow();
+            }
+            return report(path, writer, start);
+        }
+    }
+
+    private FileReport exportSecurities(Path path) throws IOException {
+        long start = System.nanoTime();
+        try (RowWriter writer = new RowWriter(path, "isin,tickSize,lotSize")) {
+            for (Security security : securityRepository.allSecurities()) {
+                writer.field(security.getIsin()).field(security.getTickSize()).field(security.getLotSize());
+                writer.endRow();
+            }
+            return report(path, writer, start);
+        }
+    }
+
+    private FileReport exportPositions(Path path) throws IOException {
+        long start = System.nanoTime();
+        try (RowWriter writer = new RowWriter(path, "shareholderId,isin,positions")) {
+            for (Shareholder shareholder : shareholderRepository.allShareholders()) {
+                for (var entry : shareholder.getPositions().entrySet()) {
+                    writer.field(shareholder.getShareholderId()).field(entry.getKey().getIsin())
+                            .field(entry.getValue());
+                    writer.endRow();
+                }
+            }
+            return report(path, writer, start);
+        }
+    }
+
+    private FileReport exportOrderBooks(Path path) throws IOException {
+        long start = System.nanoTime();
+        try (RowWriter writer = new RowWriter(path, "orderId,isin,side,quantity,price,brokerId,shareholderId,"
+                + "entryTime,peakSize,displayedQuantity,minimumExecutionQuantity,stopPrice,requestId")) {
+            for (Security security : securityRepository.allSecurities()) {
+                for (Order order : security.getOrderBook().getQueue(Side.BUY))
+                    writeOrder(writer, order);
+                for (Order order : security.getOrderBook().getQueue(Side.SELL))
+                    writeOrder(writer, order);
+                for (Order order : security.getOrderBook().getInactiveStopLimitOrders(Side.BUY))
+                    writeOrder(writer, order);
+                for (Order order : security.getOrderBook().getInactiveStopLimitOrders(Side.SELL))
+                    writeOrder(writer, order);
+            }
+            return report(path, writer, start);
+        }
+    }
+
+    private static void writeOrder(RowWriter writer, Order order) throws IOException {
+        writer.field(order.getOrderId())
+                .field(order.getSecurity().getIsin())
+                .field(order.getSide().toString())
+                .field(order.getTotalQuantity())
+                .field(order.getPrice())
+                .field(order.getBroker().getBrokerId())
+                .field(order.getShareholder().getShareholderId())
+                .field(order.getEntryTime().toString());
+        if (order instanceof IcebergOrder icebergOrder)
+            writer.field(icebergOrder.getPeakSize()).field(icebergOrder.getDisplayedQuantity());
+        else
+            writer.field(0).field(0);
+        writer.field(order.getMinimumExecutionQuantity());
+        if (order instanceof StopLimitOrder stopLimitOrder && !stopLimitOrder.getIsActive())
+            writer.field(String.valueOf(stopLimitOrder.getStopPrice())).field(order.getRequestId());
+        writer.endRow();
+    }
+}
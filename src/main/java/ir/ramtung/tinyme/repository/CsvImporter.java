@@ -0,0 +1,306 @@
+package ir.ramtung.tinyme.repository;
+
+import com.opencsv.CSVParser;
+import ir.ramtung.tinyme.domain.entity.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the CSV persistence files of {@code DataLoader} into the repositories
+ * for bulk imports. Each file is read in chunks of lines which are parsed and
+ * validated on the worker threads, while the rows are added to the
+ * repositories on the calling thread in file order, so queue priorities are
+ * kept. Only a bounded number of chunks is in flight at a time, so files of
+ * any size stream through.
+ * <p>
+ * Brokers, shareholders and securities are imported first. The positions and
+ * orders referring to them are then checked against the imported ones on the
+ * worker threads, which only read the repositories at that point. Malformed
+ * rows, duplicates and rows referring to unknown entities are rejected and
+ * reported rather than failing the import.
+ */
+final class CsvImporter {
+    static final int CHUNK_LINES = 8192;
+
+    record Rejection(long line, String text, String reason) {
+    }
+
+    record FileReport(String file, long rows, List<Rejection> rejections, long nanos) {
+        double rowsPerSecond() {
+            return nanos == 0 ? 0 : rows * 1e9 / nanos;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowParser<T> {
+        T parse(String[] fields);
+    }
+
+    @FunctionalInterface
+    private interface RowSink<T> {
+        void accept(T row);
+    }
+
+    private record Parsed<T>(long line, String text, T row, String reason) {
+    }
+
+    private record PositionRow(Shareholder shareholder, Security security, int amount) {
+    }
+
+    private final ExecutorService workers;
+    private final int chunksInFlight;
+    private final BrokerRepository brokerRepository;
+    private final ShareholderRepository shareholderRepository;
+    private final SecurityRepository securityRepository;
+
+    CsvImporter(ExecutorService workers, int chunksInFlight, BrokerRepository brokerRepository,
+            ShareholderRepository shareholderRepository, SecurityRepository securityRepository) {
+        this.workers = workers;
+        this.chunksInFlight = chunksInFlight;
+        this.brokerRepository = brokerRepository;
+        this.shareholderRepository = shareholderRepository;
+        this.securityRepository = securityRepository;
+    }
+
+    /**
+     * Imports the five persistence files found in {@code directory} and
+     * returns a report for each of them, in loading order.
+     */
+    List<FileReport> importAll(Path directory) throws IOException {
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        securityRepository.clear();
+        List<FileReport> reports = new ArrayList<>();
+        reports.add(importFile(directory.resolve("broker.csv"), this::parseBroker, broker -> {
+            if (brokerRepository.findBrokerById(broker.getBrokerId()) != null)
+                throw new IllegalArgumentException("duplicate broker " + broker.getBrokerId());
+            brokerRepository.addBroker(broker);
+        }));
+        reports.add(importFile(directory.resolve("shareholder.csv"), this::parseShareholder, shareholder -> {
+            if (shareholderRepository.findShareholderById(shareholder.getShareholderId()) != null)
+                throw new IllegalArgumentException("duplicate shareholder " + shareholder.getShareholderId());
+            shareholderRepository.addShareholder(shareholder);
+        }));
+        reports.add(importFile(directory.resolve("security.csv"), this::parseSecurity, security -> {
+            if (securityRepository.findSecurityByIsin(security.getIsin()) != null)
+                throw new IllegalArgumentException("duplicate security " + security.getIsin());
+            securityRepository.addSecurity(security);
+        }));
+        reports.add(importFile(directory.resolve("position.csv"), this::parsePosition,
+                row -> row.shareholder().incPosition(row.security(), row.amount())));
+        reports.add(importFile(directory.resolve("orderbook.csv"), this::parseOrder, order -> {
+            OrderBook orderBook = order.getSecurity().getOrderBook();
+            if (orderBook.findByOrderId(order.getSide(), order.getOrderId()) != null
+                    || orderBook.findInActiveByOrderId(order.getSide(), order.getOrderId()) != null)
+                throw new IllegalArgumentException("duplicate order " + order.getOrderId());
+            if (order instanceof StopLimitOrder) {
+                orderBook.enqueueInactiveStopLimitOrder(order);
+            } else if (order instanceof IcebergOrder icebergOrder) {
+                int displayedQuantity = icebergOrder.getDisplayedQuantity();
+                orderBook.enqueue(order);
+                icebergOrder.setDisplayedQuantity(displayedQuantity);
+            } else {
+                orderBook.enqueue(order);
+            }
+        }));
+        return reports;
+    }
+
+    private <T> FileReport importFile(Path file, RowParser<T> parser, RowSink<T> sink) throws IOException {
+        long start = System.nanoTime();
+        long rows = 0;
+        List<Rejection> rejections = new ArrayList<>();
+        ArrayDeque<Future<List<Parsed<T>>>> inFlight = new ArrayDeque<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            long nextLine = 2;
+            List<String> chunk = new ArrayList<>(CHUNK_LINES);
+            while (true) {
+                String line = reader.readLine();
+                if (line != null)
+                    chunk.add(line);
+                if (chunk.size() == CHUNK_LINES || (line == null && !chunk.isEmpty())) {
+                    if (inFlight.size() == chunksInFlight)
+                        rows += apply(inFlight.removeFirst(), sink, rejections);
+                    long firstLine = nextLine;
+                    List<String> lines = chunk;
+                    inFlight.addLast(workers.submit(() -> parseChunk(firstLine, lines, parser)));
+                    nextLine += lines.size();
+                    chunk = new ArrayList<>(CHUNK_LINES);
+                }
+                if (line == null)
+                    break;
+            }
+            while (!inFlight.isEmpty())
+                rows += apply(inFlight.removeFirst(), sink, rejections);
+        }
+        return new FileReport(file.getFileName().toString(), rows, rejections, System.nanoTime() - start);
+    }
+
+    private <T> List<Parsed<T>> parseChunk(long firstLine, List<String> lines, RowParser<T> parser) {
+        CSVParser csvParser = new CSVParser();
+        List<Parsed<T>> parsed = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            String text = lines.get(i);
+            if (text.isBlank())
+                continue;
+            try {
+                parsed.add(new Parsed<>(firstLine + i, text, parser.parse(csvParser.parseLine(text)), null));
+            } catch (IOException | RuntimeException ex) {
+                parsed.add(new Parsed<>(firstLine + i, text, null, reasonOf(ex)));
+            }
+        }
+        return parsed;
+    }
+
+    private static <T> long apply(Future<List<Parsed<T>>> chunk, RowSink<T> sink, List<Rejection> rejections)
+            throws IOException {
+        long accepted = 0;
+        for (Parsed<T> parsed : await(chunk)) {
+            if (parsed.reason() != null) {
+                rejections.add(new Rejection(parsed.line(), parsed.text(), parsed.reason()));
+                continue;
+            }
+            try {
+                sink.accept(parsed.row());
+                accepted++;
+            } catch (RuntimeException ex) {
+                rejections.add(new Rejection(parsed.line(), parsed.text(), reasonOf(ex)));
+            }
+        }
+        return accepted;
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("Could not parse a chunk", ex.getCause());
+        }
+    }
+
+    private static String reasonOf(Exception ex) {
+        if (ex instanceof NumberFormatException)
+            return "malformed number: " + ex.getMessage();
+        return ex.getMessage() == null ? ex.getClass().getSimpleName() : ex.getMessage();
+    }
+
+    private static void expectColumns(String[] fields, int count) {
+        if (fields.length < count)
+            throw new IllegalArgumentException("expected " + count + " columns, found " + fields.length);
+    }
+
+    private static int positive(String field, String name) {
+        int value = Integer.parseInt(field.trim());
+        if (value <= 0)
+            throw new IllegalArgumentException(name + " must be positive");
+        return value;
+    }
+
+    private Broker parseBroker(String[] fields) {
+        expectColumns(fields, 3);
+        return Broker.builder()
+                .brokerId(Long.parseLong(fields[0].trim()))
+                .name(fields[1])
+                .credit(Long.parseLong(fields[2].trim()))
+                .build();
+    }
+
+    private Shareholder parseShareholder(String[] fields) {
+        expectColumns(fields, 2);
+        return Shareholder.builder()
+                .shareholderId(Long.parseLong(fields[0].trim()))
+                .name(fields[1])
+                .build();
+    }
+
+    private Security parseSecurity(String[] fields) {
+        expectColumns(fields, 3);
+        return Security.builder()
+                .isin(fields[0].trim())
+                .tickSize(positive(fields[1], "tick size"))
+                .lotSize(positive(fields[2], "lot size"))
+                .build();
+    }
+
+    private Shareholder shareholder(String field) {
+        long shareholderId = Long.parseLong(field.trim());
+        Shareholder shareholder = shareholderRepository.findShareholderById(shareholderId);
+        if (shareholder == null)
+            throw new IllegalArgumentException("unknown shareholder " + shareholderId);
+        return shareholder;
+    }
+
+    private Security security(String field) {
+        Security security = securityRepository.findSecurityByIsin(field.trim());
+        if (security == null)
+            throw new IllegalArgumentException("unknown security " + field.trim());
+        return security;
+    }
+
+    private Broker broker(String field) {
+        long brokerId = Long.parseLong(field.trim());
+        Broker broker = brokerRepository.findBrokerById(brokerId);
+        if (broker == null)
+            throw new IllegalArgumentException("unknown broker " + brokerId);
+        return broker;
+    }
+
+    private PositionRow parsePosition(String[] fields) {
+        expectColumns(fields, 3);
+        return new PositionRow(shareholder(fields[0]), security(fields[1]), positive(fields[2], "position"));
+    }
+
+    // orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,peakSize,displayedQuantity,
+    // minimumExecutionQuantity,stopPrice,requestId
+    private Order parseOrder(String[] fields) {
+        expectColumns(fields, 10);
+        long orderId = Long.parseLong(fields[0].trim());
+        Security security = security(fields[1]);
+        Side side = Side.parse(fields[2].trim());
+        int quantity = positive(fields[3], "quantity");
+        int price = positive(fields[4], "price");
+        Broker broker = broker(fields[5]);
+        Shareholder shareholder = shareholder(fields[6]);
+        LocalDateTime entryTime = LocalDateTime.parse(fields[7].trim());
+        int peakSize = Integer.parseInt(fields[8].trim());
+        int displayedQuantity = Integer.parseInt(fields[9].trim());
+        int minimumExecutionQuantity = fields.length > 10 ? Integer.parseInt(fields[10].trim()) : 0;
+        if (peakSize < 0 || displayedQuantity < 0 || minimumExecutionQuantity < 0)
+            throw new IllegalArgumentException("negative peak size, displayed or minimum execution quantity");
+        if (minimumExecutionQuantity > quantity)
+            throw new IllegalArgumentException("minimum execution quantity exceeds quantity");
+        double stopPrice = fields.length > 11 ? Double.parseDouble(fields[11].trim()) : 0;
+        if (stopPrice < 0)
+            throw new IllegalArgumentException("negative stop price");
+        if (stopPrice > 0) {
+            if (peakSize != 0 || minimumExecutionQuantity != 0)
+                throw new IllegalArgumentException("stop-limit order with a peak size or minimum execution quantity");
+            StopLimitOrder order = new StopLimitOrder(orderId, security, side, quantity, price, broker, shareholder,
+                    entryTime, stopPrice, OrderStatus.QUEUED);
+            order.setRequestId(fields.length > 12 ? Long.parseLong(fields[12].trim()) : 0);
+            return order;
+        }
+        if (peakSize == 0)
+            return new Order(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                    OrderStatus.QUEUED, minimumExecutionQuantity);
+        if (displayedQuantity > peakSize || displayedQuantity > quantity)
+            throw new IllegalArgumentException("displayed quantity exceeds peak size or quantity");
+        return new IcebergOrder(orderId, security, side, quantity, price, broker, shareholder, entryTime, peakSize,
+                displayedQuantity, OrderStatus.QUEUED, minimumExecutionQuantity);
+    }
+}
@@ -3,6 +3,7 @@ package ir.ramtung.tinyme.repository;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
 import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.journal.RequestJournal;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
@@ -12,27 +13,55 @@ import org.springframework.stereotype.Component;
 
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Logger;
 
+/**
+ * Loads the persistent data on startup and saves it on shutdown, as CSV or
+ * as memory-mapped binary files depending on {@code persistence.format}.
+ * Brokers, shareholders and securities are loaded in parallel, and then the
+ * positions and the order books, which refer to them. The order books include
+ * the inactive stop-limit orders, so nothing is lost when the journal and the
+ * snapshot are discarded after saving.
+ */
 @Component
 @Profile("!test")
 public class DataLoader {
+    @FunctionalInterface
+    private interface Loader {
+        void load() throws Exception;
+    }
+
     private final Logger log = Logger.getLogger(this.getClass().getName());
     private final BrokerRepository brokerRepository;
     private final ShareholderRepository shareholderRepository;
     private final SecurityRepository securityRepository;
+    private final RequestJournal requestJournal;
+    private final SnapshotService snapshotService;
+    private final PersistenceFormat format;
 
     public DataLoader(BrokerRepository brokerRepository, ShareholderRepository shareholderRepository,
-            SecurityRepository securityRepository) {
+            SecurityRepository securityRepository, RequestJournal requestJournal, SnapshotService snapshotService,
+            @Value("${persistence.format:CSV}") PersistenceFormat format) {
         this.brokerRepository = brokerRepository;
         this.shareholderRepository = shareholderRepository;
         this.securityRepository = securityRepository;
+        this.requestJournal = requestJournal;
+        this.snapshotService = snapshotService;
+        this.format = format;
     }
 
     @Value("classpath:persistence/broker.csv")
@@ -48,22 +77,101 @@ public class DataLoader {
 
     @PostConstruct
     public void loadAll() throws Exception {
-        loadBrokers();
-        loadShareholders();
-        loadSecurities();
-        loadPositions();
-        loadOrderBook();
+        if (format == PersistenceFormat.BINARY && binaryFilesExist()) {
+            loadInParallel(this::loadBrokersBinary, this::loadShareholdersBinary, this::loadSecuritiesBinary);
+            loadInParallel(this::loadPositionsBinary, this::loadOrderBookBinary);
+        } else {
+            loadInParallel(this::loadBrokers, this::loadShareholders, this::loadSecurities);
+            loadInParallel(this::loadPositions, this::loadOrderBook);
+        }
     }
 
     @PreDestroy
     public void saveAll() throws Exception {
         System.out.print("Saving persistent data ...");
-        saveBrokers();
-        saveShareholdersAndPositions();
-        saveSecuritiesAndOrderBooks();
+        if (format == PersistenceFormat.BINARY) {
+            saveBinary();
+        } else {
+            saveBrokers();
+            saveShareholdersAndPositions();
+            saveSecuritiesAndOrderBooks();
+        }
+        requestJournal.checkpoint();
+        snapshotService.discard();
         System.out.println(", done!");
     }
 
+    private static void loadInParallel(Loader... loaders) throws Exception {
+        CompletableFuture<?>[] loading = Arrays.stream(loaders)
+                .map(loader -> CompletableFuture.runAsync(() -> {
+                    try {
+                        loader.load();
+                    } catch (Exception ex) {
+                        throw new CompletionException(ex);
+                    }
+                }))
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(loading).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof Exception cause)
+                throw cause;
+            throw ex;
+        }
+    }
+
+    private static Path binaryPath(Resource csvResource) throws IOException {
+        Path csv = csvResource.getFile().toPath();
+        String name = csv.getFileName().toString();
+        return csv.resolveSibling(name.substring(0, name.lastIndexOf('.')) + ".bin");
+    }
+
+    private boolean binaryFilesExist() throws IOException {
+        for (Resource csvResource : new Resource[] { brokerCsvResource, shareholderCsvResource, securityCsvResource,
+                positionCsvResource, orderBookCsvResource })
+            if (!Files.exists(binaryPath(csvResource)))
+                return false;
+        return true;
+    }
+
+    private void loadBrokersBinary() throws Exception {
+        brokerRepository.clear();
+        BinaryPersistence.readBrokers(binaryPath(brokerCsvResource), brokerRepository);
+        log.info("Brokers loaded");
+    }
+
+    private void loadShareholdersBinary() throws Exception {
+        shareholderRepository.clear();
+        BinaryPersistence.readShareholders(binaryPath(shareholderCsvResource), shareholderRepository);
+        log.info("Shareholders loaded");
+    }
+
+    private void loadSecuritiesBinary() throws Exception {
+        securityRepository.clear();
+        BinaryPersistence.readSecurities(binaryPath(securityCsvResource), securityRepository);
+        log.info("Securities loaded");
+    }
+
+    private void loadPositionsBinary() throws Exception {
+        BinaryPersistence.readPositions(binaryPath(positionCsvResource), shareholderRepository, securityRepository);
+        log.info("Positions loaded");
+    }
+
+    private void loadOrderBookBinary() throws Exception {
+        BinaryPersistence.readOrderBooks(binaryPath(orderBookCsvResource), securityRepository, brokerRepository,
+                shareholderRepository);
+        log.info("Order Book loaded");
+    }
+
+    private void saveBinary() throws Exception {
+        BinaryPersistence.writeBrokers(binaryPath(brokerCsvResource), brokerRepository.allBrokers());
+        BinaryPersistence.writeShareholders(binaryPath(shareholderCsvResource), shareholderRepository.allShareholders());
+        BinaryPersistence.writeSecurities(binaryPath(securityCsvResource), securityRepository.allSecurities());
+        BinaryPersistence.writePositions(binaryPath(positionCsvResource), shareholderRepository.allShareholders());
+        BinaryPersistence.writeOrderBooks(binaryPath(orderBookCsvResource), securityRepository.allSecurities());
+        log.info("Persistent data saved in binary");
+    }
+
     private void loadBrokers() throws Exception {
         brokerRepository.clear();
         try (Reader reader = new FileReader(brokerCsvResource.getFile())) {
@@ -130,6 +238,7 @@ public class DataLoader {
 
     private void loadOrderBook() throws Exception {
         LinkedList<Order> orders = new LinkedList<>();
+        List<Order> stopLimitOrders = new ArrayList<>();
         try (Reader reader = new FileReader(orderBookCsvResource.getFile())) {
             try (CSVReader csvReader = new CSVReaderBuilder(reader).withSkipLines(1).build()) {
                 String[] line;
@@ -138,11 +247,28 @@ public class DataLoader {
                     Broker broker = brokerRepository.findBrokerById(Long.parseLong(line[5]));
                     Shareholder shareholder = shareholderRepository.findShareholderById(Long.parseLong(line[6]));
                     // orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,peakSize,displayedQuantity,
-                    // meq
-                    // 0 1 2 3 4 5 6 7 8 9 10
+                    // meq,stopPrice,requestId
+                    // 0 1 2 3 4 5 6 7 8 9 10 11 12
                     int peakSize = Integer.parseInt(line[8]);
+                    int minimumExecutionQuantity = line.length > 10 ? Integer.parseInt(line[10]) : 0;
+                    double stopPrice = line.length > 11 ? Double.parseDouble(line[11]) : 0;
                     Order order;
-                    if (peakSize == 0) {
+                    if (stopPrice > 0) {
+                        order = new StopLimitOrder(
+                                Long.parseLong(line[0]),
+                                security,
+                                Side.parse(line[2]),
+                                Integer.parseInt(line[3]),
+                                Integer.parseInt(line[4]),
+                                broker,
+                                shareholder,
+                                LocalDateTime.parse(line[7]),
+                                stopPrice,
+                                OrderStatus.QUEUED);
+                        order.setRequestId(Long.parseLong(line[12]));
+                        stopLimitOrders.add(order);
+                        continue;
+                    } else if (peakSize == 0) {
                         order = new Order(
                                 Long.parseLong(line[0]),
                                 security,
@@ -153,7 +279,7 @@ public class DataLoader {
                                 shareholder,
                                 LocalDateTime.parse(line[7]),
                                 OrderStatus.QUEUED,
-                                Integer.parseInt(line[8]));
+                                minimumExecutionQuantity);
                     } else {
                         order = new IcebergOrder(
                                 Long.parseLong(line[0]),
@@ -167,7 +293,7 @@ public class DataLoader {
                                 Integer.parseInt(line[8]),
                                 Integer.parseInt(line[9]),
                                 OrderStatus.QUEUED,
-                                Integer.parseInt(line[10]));
+                                minimumExecutionQuantity);
                     }
                     orders.addFirst(order);
                 }
@@ -178,6 +304,8 @@ public class DataLoader {
             Order order = it.next();
             order.getSecurity().getOrderBook().enqueue(order);
         }
+        for (Order order : stopLimitOrders)
+            order.getSecurity().getOrderBook().enqueueInactiveStopLimitOrder(order);
         log.info("Order Book loaded");
     }
 
@@ -222,17 +350,21 @@ public class DataLoader {
         try (PrintWriter securityWriter = new PrintWriter(new FileWriter(securityCsvResource.getFile()))) {
             securityWriter.println("isin,tickSize,lotSize");
             try (PrintWriter orderBookWriter = new PrintWriter(new FileWriter(orderBookCsvResource.getFile()))) {
-                orderBookWriter.println(
-                        "orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,status,peakSize,displayedQuantity");
+                orderBookWriter.println("orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,peakSize,"
+                        + "displayedQuantity,minimumExecutionQuantity,stopPrice,requestId");
                 for (Security security : securityRepository.allSecurities()) {
                     StringJoiner joiner = new StringJoiner(",");
                     joiner.add(security.getIsin())
                             .add(String.valueOf(security.getTickSize()))
                             .add(String.valueOf(security.getLotSize()));
                     securityWriter.println(joiner);
-                    for (Order order : security.getOrderBook().getBuyQueue())
+                    for (Order order : security.getOrderBook().getQueue(Side.BUY))
+                        orderBookWriter.println(getCSVString(order));
+                    for (Order order : security.getOrderBook().getQueue(Side.SELL))
                         orderBookWriter.println(getCSVString(order));
-                    for (Order order : security.getOrderBook().getSellQueue())
+                    for (Order order : security.getOrderBook().getInactiveStopLimitOrders(Side.BUY))
+                        orderBookWriter.println(getCSVString(order));
+                    for (Order order : security.getOrderBook().getInactiveStopLimitOrders(Side.SELL))
                         orderBookWriter.println(getCSVString(order));
                 }
             }
@@ -256,6 +388,11 @@ public class DataLoader {
         } else {
             orderJoiner.add("0").add("0");
         }
+        orderJoiner.add(String.valueOf(order.getMinimumExecutionQuantity()));
+        if (order instanceof StopLimitOrder stopLimitOrder && !stopLimitOrder.getIsActive()) {
+            orderJoiner.add(String.valueOf(stopLimitOrder.getStopPrice()))
+                    .add(String.valueOf(order.getRequestId()));
+        }
         return orderJoiner.toString();
     }
 
@@ -0,0 +1,14 @@
+package ir.ramtung.tinyme.repository;
+
+/**
+ * The format {@code DataLoader} saves the persistent data in.
+ */
+public enum PersistenceFormat {
+    /** Human-editable CSV files. */
+    CSV,
+    /**
+     * Memory-mapped binary files next to the CSV ones. They are loaded when
+     * present; otherwise the CSV files are, so existing data carries over.
+     */
+    BINARY
+}
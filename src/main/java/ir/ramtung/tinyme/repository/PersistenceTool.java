@@ -0,0 +1,120 @@
+package ir.ramtung.tinyme.repository;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Standalone bulk import and export of the persistent data, for seeding
+ * environments with large files. Runs without the Spring context or the
+ * message broker, from the packaged jar with
+ * <pre>
+ *   java -cp tinyme.jar -Dloader.main=ir.ramtung.tinyme.repository.PersistenceTool \
+ *       org.springframework.boot.loader.launch.PropertiesLauncher import &lt;csv-dir&gt; &lt;data-dir&gt; [CSV|BINARY]
+ *   ... PropertiesLauncher export &lt;data-dir&gt; &lt;csv-dir&gt;
+ * </pre>
+ * {@code import} validates the CSV files in {@code csv-dir} and writes the
+ * accepted rows into {@code data-dir} in the given format, binary by default.
+ * {@code export} writes the binary files in {@code data-dir} as CSV files.
+ * Both print the rows and rows per second of every file, and {@code import}
+ * prints every rejected line to the standard error.
+ */
+public final class PersistenceTool {
+    private static final String[] FILES = { "broker", "shareholder", "security", "position", "orderbook" };
+
+    private final PrintStream out;
+    private final PrintStream err;
+    private final BrokerRepository brokerRepository = new BrokerRepository();
+    private final ShareholderRepository shareholderRepository = new ShareholderRepository();
+    private final SecurityRepository securityRepository = new SecurityRepository();
+
+    PersistenceTool(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(new PersistenceTool(System.out, System.err).run(args));
+    }
+
+    int run(String[] args) throws Exception {
+        if (args.length >= 3 && args.length <= 4 && args[0].equals("import")) {
+            PersistenceFormat format = args.length == 4 ? PersistenceFormat.valueOf(args[3].toUpperCase())
+                    : PersistenceFormat.BINARY;
+            return importData(Path.of(args[1]), Path.of(args[2]), format);
+        }
+        if (args.length == 3 && args[0].equals("export"))
+            return exportData(Path.of(args[1]), Path.of(args[2]));
+        err.println("usage: PersistenceTool import <csv-dir> <data-dir> [CSV|BINARY]");
+        err.println("       PersistenceTool export <data-dir> <csv-dir>");
+        return 2;
+    }
+
+    private int importData(Path source, Path target, PersistenceFormat format) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<CsvImporter.FileReport> reports;
+        try {
+            reports = new CsvImporter(workers, 2 * threads, brokerRepository, shareholderRepository,
+                    securityRepository).importAll(source);
+        } finally {
+            workers.shutdownNow();
+        }
+        int rejected = 0;
+        for (CsvImporter.FileReport report : reports) {
+            out.printf("%-16s %10d rows %8d rejected %12.0f rows/s%n", report.file(), report.rows(),
+                    report.rejections().size(), report.rowsPerSecond());
+            for (CsvImporter.Rejection rejection : report.rejections())
+                err.println(report.file() + ":" + rejection.line() + ": " + rejection.reason() + ": "
+                        + rejection.text());
+            rejected += report.rejections().size();
+        }
+        Files.createDirectories(target);
+        if (format == PersistenceFormat.BINARY)
+            writeBinary(target);
+        else
+            printExport(new CsvExporter(brokerRepository, shareholderRepository, securityRepository)
+                    .exportAll(target));
+        return rejected == 0 ? 0 : 1;
+    }
+
+    private int exportData(Path source, Path target) throws IOException {
+        for (String file : FILES) {
+            if (!Files.exists(source.resolve(file + ".bin"))) {
+                err.println("missing " + source.resolve(file + ".bin"));
+                return 2;
+            }
+        }
+        long start = System.nanoTime();
+        BinaryPersistence.readBrokers(source.resolve("broker.bin"), brokerRepository);
+        BinaryPersistence.readShareholders(source.resolve("shareholder.bin"), shareholderRepository);
+        BinaryPersistence.readSecurities(source.resolve("security.bin"), securityRepository);
+        BinaryPersistence.readPositions(source.resolve("position.bin"), shareholderRepository, securityRepository);
+        BinaryPersistence.readOrderBooks(source.resolve("orderbook.bin"), securityRepository, brokerRepository,
+                shareholderRepository);
+        out.printf("binary files loaded in %d ms%n", (System.nanoTime() - start) / 1_000_000);
+        Files.createDirectories(target);
+        printExport(new CsvExporter(brokerRepository, shareholderRepository, securityRepository).exportAll(target));
+        return 0;
+    }
+
+    private void writeBinary(Path target) throws IOException {
+        long start = System.nanoTime();
+        BinaryPersistence.writeBrokers(target.resolve("broker.bin"), brokerRepository.allBrokers());
+        BinaryPersistence.writeShareholders(target.resolve("shareholder.bin"), shareholderRepository.allShareholders());
+        BinaryPersistence.writeSecurities(target.resolve("security.bin"), securityRepository.allSecurities());
+        BinaryPersistence.writePositions(target.resolve("position.bin"), shareholderRepository.allShareholders());
+        BinaryPersistence.writeOrderBooks(target.resolve("orderbook.bin"), securityRepository.allSecurities());
+        out.printf("binary files written in %d ms%n", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void printExport(List<CsvExporter.FileReport> reports) {
+        for (CsvExporter.FileReport report : reports)
+            out.printf("%-16s %10d rows written %12.0f rows/s%n", report.file(), report.rows(),
+                    report.rowsPerSecond());
+    }
+}
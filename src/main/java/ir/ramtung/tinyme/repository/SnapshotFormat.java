@@ -0,0 +1,237 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Binary layout of a snapshot: a header with the journal position the image
+ * reflects, the brokers with their credit, the shareholders, and then every
+ * security with its state, positions and order book. Queued orders are kept
+ * in queue order and inactive stop-limit orders in activation order, so
+ * restoring them by enqueueing in sequence rebuilds the same priorities.
+ * Since version 2 every order also keeps its engine sequence number, so
+ * restored orders keep their stop-limit tie-breaks and rank before the
+ * requests accepted after the restore. Version 1 snapshots are still read;
+ * their orders restore unstamped.
+ */
+final class SnapshotFormat {
+    private static final int MAGIC = 0x544D534E;
+    private static final int VERSION = 2;
+    private static final int UNSTAMPED_VERSION = 1;
+
+    private static final byte PLAIN = 0;
+    private static final byte ICEBERG = 1;
+    private static final byte STOP_LIMIT = 2;
+
+    record Header(int version, long journalPosition) {
+    }
+
+    private SnapshotFormat() {
+    }
+
+    static void writeHeader(DataOutput out, long journalPosition) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(journalPosition);
+    }
+
+    /**
+     * Checks the header and returns its version and the journal position the
+     * snapshot reflects.
+     */
+    static Header readHeader(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a snapshot");
+        int version = in.readInt();
+        if (version != VERSION && version != UNSTAMPED_VERSION)
+            throw new IOException("Unsupported snapshot version " + version);
+        return new Header(version, in.readLong());
+    }
+
+    static void writeLedger(DataOutput out, List<Broker> brokers, List<Shareholder> shareholders) throws IOException {
+        out.writeInt(brokers.size());
+        for (Broker broker : brokers) {
+            out.writeLong(broker.getBrokerId());
+            writeString(out, broker.getName());
+            out.writeLong(broker.getCredit());
+        }
+        out.writeInt(shareholders.size());
+        for (Shareholder shareholder : shareholders) {
+            out.writeLong(shareholder.getShareholderId());
+            writeString(out, shareholder.getName());
+        }
+    }
+
+    static void readLedger(DataInput in, BrokerRepository brokerRepository,
+            ShareholderRepository shareholderRepository) throws IOException {
+        brokerRepository.clear();
+        int brokers = in.readInt();
+        for (int i = 0; i < brokers; i++) {
+            brokerRepository.addBroker(Broker.builder()
+                    .brokerId(in.readLong())
+                    .name(readString(in))
+                    .credit(in.readLong())
+                    .build());
+        }
+        shareholderRepository.clear();
+        int shareholders = in.readInt();
+        for (int i = 0; i < shareholders; i++) {
+            shareholderRepository.addShareholder(Shareholder.builder()
+                    .shareholderId(in.readLong())
+                    .name(readString(in))
+                    .build());
+        }
+    }
+
+    /**
+     * Writes a security and everything hanging off it. Must run on the thread
+     * owning the security, between two requests.
+     */
+    static void writeSecurity(DataOutput out, Security security, Iterable<? extends Shareholder> shareholders)
+            throws IOException {
+        OrderBook orderBook = security.getOrderBook();
+        writeString(out, security.getIsin());
+        out.writeInt(security.getTickSize());
+        out.writeInt(security.getLotSize());
+        out.writeByte(security.getMatchingState().ordinal());
+        out.writeInt(security.getIndicativeOpeningPrice());
+        out.writeInt(security.getHighestQuantity());
+        out.writeDouble(orderBook.getLastTradePrice());
+        int positions = 0;
+        for (Shareholder shareholder : shareholders)
+            if (shareholder.getPositions().containsKey(security))
+                positions++;
+        out.writeInt(positions);
+        for (Shareholder shareholder : shareholders) {
+            Integer position = shareholder.getPositions().get(security);
+            if (position != null) {
+                out.writeLong(shareholder.getShareholderId());
+                out.writeInt(position);
+            }
+        }
+        writeOrders(out, orderBook.getQueue(Side.BUY).toList());
+        writeOrders(out, orderBook.getQueue(Side.SELL).toList());
+        writeOrders(out, orderBook.getInactiveStopLimitOrders(Side.BUY));
+        writeOrders(out, orderBook.getInactiveStopLimitOrders(Side.SELL));
+    }
+
+    static void readSecurity(DataInput in, int version, SecurityRepository securityRepository,
+            BrokerRepository brokerRepository, ShareholderRepository shareholderRepository) throws IOException {
+        Security security = Security.builder()
+                .isin(readString(in))
+                .tickSize(in.readInt())
+                .lotSize(in.readInt())
+                .matchingState(MatchingState.values()[in.readByte()])
+                .indicativeOpeningPrice(in.readInt())
+                .highestQuantity(in.readInt())
+                .build();
+        security.getOrderBook().setLastTradePrice(in.readDouble());
+        securityRepository.addSecurity(security);
+        int positions = in.readInt();
+        for (int i = 0; i < positions; i++)
+            shareholderRepository.findShareholderById(in.readLong()).incPosition(security, in.readInt());
+        OrderBook orderBook = security.getOrderBook();
+        for (int queue = 0; queue < 2; queue++) {
+            int orders = in.readInt();
+            for (int i = 0; i < orders; i++) {
+                Order order = readOrder(in, version, security, brokerRepository, shareholderRepository);
+                if (order instanceof IcebergOrder icebergOrder) {
+                    // Queueing shows a full peak, while a resting iceberg may show less
+                    int displayedQuantity = icebergOrder.getDisplayedQuantity();
+                    orderBook.enqueue(order);
+                    icebergOrder.setDisplayedQuantity(displayedQuantity);
+                } else {
+                    orderBook.enqueue(order);
+                }
+            }
+        }
+        for (int queue = 0; queue < 2; queue++) {
+            int orders = in.readInt();
+            for (int i = 0; i < orders; i++)
+                orderBook.enqueueInactiveStopLimitOrder(readOrder(in, version, security, brokerRepository,
+                        shareholderRepository));
+        }
+    }
+
+    private static void writeOrders(DataOutput out, Iterable<Order> orders) throws IOException {
+        int count = 0;
+        for (Order ignored : orders)
+            count++;
+        out.writeInt(count);
+        for (Order order : orders)
+            writeOrder(out, order);
+    }
+
+    private static void writeOrder(DataOutput out, Order order) throws IOException {
+        out.writeByte(order instanceof IcebergOrder ? ICEBERG : order instanceof StopLimitOrder ? STOP_LIMIT : PLAIN);
+        out.writeLong(order.getOrderId());
+        out.writeByte(order.getSide().ordinal());
+        out.writeInt(order.getTotalQuantity());
+        out.writeInt(order.getPrice());
+        out.writeLong(order.getBroker().getBrokerId());
+        out.writeLong(order.getShareholder().getShareholderId());
+        out.writeLong(order.getEntryTime().toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(order.getEntryTime().getNano());
+        out.writeByte(order.getStatus().ordinal());
+        out.writeInt(order.getMinimumExecutionQuantity());
+        out.writeLong(order.getRequestId());
+        out.writeLong(order.getSequence());
+        if (order instanceof IcebergOrder icebergOrder) {
+            out.writeInt(icebergOrder.getPeakSize());
+            out.writeInt(icebergOrder.getDisplayedQuantity());
+        } else if (order instanceof StopLimitOrder stopLimitOrder) {
+            out.writeDouble(stopLimitOrder.getStopPrice());
+            out.writeBoolean(stopLimitOrder.getIsActive());
+        }
+    }
+
+    private static Order readOrder(DataInput in, int version, Security security, BrokerRepository brokerRepository,
+            ShareholderRepository shareholderRepository) throws IOException {
+        byte kind = in.readByte();
+        long orderId = in.readLong();
+        Side side = Side.values()[in.readByte()];
+        int quantity = in.readInt();
+        int price = in.readInt();
+        Broker broker = brokerRepository.findBrokerById(in.readLong());
+        Shareholder shareholder = shareholderRepository.findShareholderById(in.readLong());
+        LocalDateTime entryTime = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        OrderStatus status = OrderStatus.values()[in.readByte()];
+        int minimumExecutionQuantity = in.readInt();
+        long requestId = in.readLong();
+        long sequence = version == UNSTAMPED_VERSION ? 0 : in.readLong();
+        Order order;
+        if (kind == ICEBERG) {
+            order = new IcebergOrder(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                    in.readInt(), in.readInt(), status, minimumExecutionQuantity);
+        } else if (kind == STOP_LIMIT) {
+            StopLimitOrder stopLimitOrder = new StopLimitOrder(orderId, security, side, quantity, price, broker,
+                    shareholder, entryTime, in.readDouble(), status);
+            stopLimitOrder.setIsActive(in.readBoolean());
+            order = stopLimitOrder;
+        } else {
+            order = new Order(orderId, security, side, quantity, price, broker, shareholder, entryTime, status,
+                    minimumExecutionQuantity, requestId);
+        }
+        order.setRequestId(requestId);
+        order.stamp(sequence);
+        EngineClock.skipPast(sequence);
+        return order;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeUTF(value);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,269 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Shareholder;
+import ir.ramtung.tinyme.domain.service.MatchingShards;
+import ir.ramtung.tinyme.journal.RequestJournal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Takes periodic binary snapshots of the books, broker credits and positions,
+ * so that recovery replays only the journal written after the latest one.
+ * <p>
+ * A snapshot is taken at a position in the request journal. When the journal
+ * writer reaches it, every shard is sent a capture task behind the requests
+ * before that position. The shards wait for each other only long enough to
+ * copy the broker credits, which all of them change, so taking a snapshot
+ * briefly pauses matching on every shard at once; each shard then copies its
+ * own securities and resumes while the others are still copying. If a shard
+ * cannot be sent its task, the others are released at once and the snapshot
+ * fails instead of holding them until the capture times out. The
+ * image is written to disk on the snapshot thread and replaces the previous
+ * snapshot atomically.
+ * <p>
+ * On startup the latest snapshot, if any, replaces the state loaded by
+ * {@code DataLoader}, and the journal is replayed from its position. Saving
+ * the persistent data on shutdown discards the snapshot together with the
+ * journal. Snapshots need the journal and are off when {@code snapshot.path}
+ * is not set.
+ */
+@Component
+public class SnapshotService implements SmartLifecycle {
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final Path path;
+    private final long intervalSeconds;
+    private final BrokerRepository brokerRepository;
+    private final ShareholderRepository shareholderRepository;
+    private final SecurityRepository securityRepository;
+    private final MatchingShards matchingShards;
+    private final RequestJournal requestJournal;
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running;
+
+    public SnapshotService(@Value("${snapshot.path:}") String path,
+            @Value("${snapshot.intervalSeconds:60}") long intervalSeconds,
+            BrokerRepository brokerRepository, ShareholderRepository shareholderRepository,
+            SecurityRepository securityRepository, MatchingShards matchingShards, RequestJournal requestJournal) {
+        this.path = path.isEmpty() ? null : Path.of(path);
+        this.intervalSeconds = intervalSeconds;
+        this.brokerRepository = brokerRepository;
+        this.shareholderRepository = shareholderRepository;
+        this.securityRepository = securityRepository;
+        this.matchingShards = matchingShards;
+        this.requestJournal = requestJournal;
+    }
+
+    public boolean isEnabled() {
+        return path != null && requestJournal.isEnabled();
+    }
+
+    private class Capture {
+        private final int shards = matchingShards.shardCount();
+        private final CountDownLatch done = new CountDownLatch(shards);
+        private final AtomicInteger arrived = new AtomicInteger();
+        private final CountDownLatch ledgerCopied = new CountDownLatch(1);
+        private final byte[][] securities = new byte[shards][];
+        private final int[] securityCounts = new int[shards];
+        private volatile long journalPosition;
+        private byte[] ledger;
+        private volatile Exception failure;
+
+        void start(long position) {
+            journalPosition = position;
+            for (int shard = 0; shard < shards; shard++) {
+                int owned = shard;
+                try {
+                    matchingShards.executeOnShard(shard, () -> copyShard(owned));
+                } catch (RejectedExecutionException ex) {
+                    failure = ex;
+                    ledgerCopied.countDown();
+                    for (int skipped = shard; skipped < shards; skipped++)
+                        done.countDown();
+                    return;
+                }
+            }
+        }
+
+        private void arrive() {
+            if (arrived.incrementAndGet() < shards)
+                return;
+            try {
+                copyLedger();
+            } catch (RuntimeException ex) {
+                failure = ex;
+            } finally {
+                ledgerCopied.countDown();
+            }
+        }
+
+        private void copyLedger() {
+            List<Broker> brokers = new ArrayList<>();
+            brokerRepository.allBrokers().forEach(brokers::add);
+            List<Shareholder> shareholders = new ArrayList<>();
+            shareholderRepository.allShareholders().forEach(shareholders::add);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                SnapshotFormat.writeLedger(new DataOutputStream(bytes), brokers, shareholders);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            ledger = bytes.toByteArray();
+        }
+
+        private void copyShard(int shard) {
+            try {
+                arrive();
+                if (!ledgerCopied.await(1, TimeUnit.MINUTES))
+                    throw new TimeoutException("Shards did not meet to copy the ledger");
+                if (failure != null)
+                    return;
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                for (Security security : securityRepository.allSecurities()) {
+                    if (matchingShards.shardOf(security.getIsin()) == shard) {
+                        SnapshotFormat.writeSecurity(out, security, shareholderRepository.allShareholders());
+                        securityCounts[shard]++;
+                    }
+                }
+                securities[shard] = bytes.toByteArray();
+            } catch (Exception ex) {
+                failure = ex;
+            } finally {
+                done.countDown();
+            }
+        }
+
+        void await() throws Exception {
+            if (!done.await(1, TimeUnit.MINUTES))
+                throw new TimeoutException("Shards did not finish the snapshot capture");
+            if (failure != null)
+                throw failure;
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            SnapshotFormat.writeHeader(out, journalPosition);
+            out.write(ledger);
+            int count = 0;
+            for (int shardCount : securityCounts)
+                count += shardCount;
+            out.writeInt(count);
+            for (byte[] section : securities)
+                out.write(section);
+        }
+    }
+
+    /**
+     * Captures the current state and writes it to the snapshot file.
+     */
+    public void takeSnapshot() throws Exception {
+        Capture capture = new Capture();
+        requestJournal.mark(capture::start);
+        capture.await();
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            capture.writeTo(out);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Snapshot taken at journal position " + capture.journalPosition);
+    }
+
+    /**
+     * Replaces the repositories with the latest snapshot and makes the journal
+     * replay from its position. Returns false if there is no snapshot.
+     */
+    public boolean restore() throws IOException {
+        if (!Files.exists(path))
+            return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            SnapshotFormat.Header header = SnapshotFormat.readHeader(in);
+            long journalPosition = header.journalPosition();
+            SnapshotFormat.readLedger(in, brokerRepository, shareholderRepository);
+            securityRepository.clear();
+            int securities = in.readInt();
+            for (int i = 0; i < securities; i++)
+                SnapshotFormat.readSecurity(in, header.version(), securityRepository, brokerRepository,
+                        shareholderRepository);
+            requestJournal.replayFrom(journalPosition);
+            log.info("Snapshot restored at journal position " + journalPosition);
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the snapshot once the state it holds has been saved otherwise.
+     */
+    public void discard() throws IOException {
+        if (path != null)
+            Files.deleteIfExists(path);
+    }
+
+    private void takeScheduledSnapshot() {
+        if (!requestJournal.isRunning())
+            return;
+        try {
+            takeSnapshot();
+        } catch (Exception ex) {
+            log.log(Level.WARNING, "Snapshot failed", ex);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (isEnabled()) {
+            try {
+                restore();
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Could not restore the snapshot " + path, ex);
+            }
+            if (intervalSeconds > 0) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "snapshot"));
+                scheduler.scheduleWithFixedDelay(this::takeScheduledSnapshot, intervalSeconds, intervalSeconds,
+                        TimeUnit.SECONDS);
+            }
+        } else if (path != null) {
+            log.warning("Snapshots are off because the request journal is off");
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 3;
+    }
+}
@@ -0,0 +1,114 @@
+package ir.ramtung.tinyme.audit;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.TradeDTO;
+import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
+import ir.ramtung.tinyme.messaging.event.OrderExecutedEvent;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditLogTest {
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 3, 1, 9, 30);
+
+    @TempDir
+    Path directory;
+    private final Logger logger = Logger.getLogger(AuditLog.class.getName());
+    private final List<String> logged = new ArrayList<>();
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            synchronized (logged) {
+                logged.add(record.getMessage());
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @BeforeEach
+    void addHandler() {
+        logger.addHandler(handler);
+    }
+
+    @AfterEach
+    void removeHandler() {
+        logger.removeHandler(handler);
+    }
+
+    private EnterOrderRq request(long requestId) {
+        return EnterOrderRq.createNewOrderRq(requestId, "ABC", 200, TIME, Side.SELL, 300, 15450, 0,
+                0, 0, 0);
+    }
+
+    @Test
+    void received_requests_and_published_events_are_read_back_in_order() throws Exception {
+        Path path = directory.resolve("audit.log");
+        AuditLog auditLog = new AuditLog(path.toString(), 0, 16);
+        EnterOrderRq request = request(1);
+        OrderAcceptedEvent accepted = new OrderAcceptedEvent(1, 200);
+        OrderExecutedEvent executed = new OrderExecutedEvent(1, 200,
+                List.of(new TradeDTO("ABC", 15450, 100, 200, 300)));
+
+        auditLog.start();
+        auditLog.received(request);
+        auditLog.published(accepted);
+        auditLog.published(executed);
+        auditLog.stop();
+
+        List<AuditLog.AuditRecord> records = new ArrayList<>();
+        AuditLog.read(path, records::add);
+        assertThat(records).extracting(AuditLog.AuditRecord::direction).containsExactly(AuditLog.Direction.RECEIVED,
+                AuditLog.Direction.PUBLISHED, AuditLog.Direction.PUBLISHED);
+        assertThat(records).extracting(AuditLog.AuditRecord::message).containsExactly(request, accepted, executed);
+        assertThat(logged).isEmpty();
+    }
+
+    @Test
+    void one_message_in_every_sample_rate_is_logged_as_text() {
+        AuditLog auditLog = new AuditLog("", 3, 16);
+
+        auditLog.start();
+        for (int i = 1; i <= 7; i++)
+            auditLog.received(request(i));
+        auditLog.stop();
+
+        assertThat(logged).hasSize(3).allMatch(message -> message.startsWith("Received message: "));
+    }
+
+    @Test
+    void an_incomplete_last_record_is_ignored() throws Exception {
+        Path path = directory.resolve("audit.log");
+        AuditLog auditLog = new AuditLog(path.toString(), 0, 16);
+        auditLog.start();
+        auditLog.received(request(1));
+        auditLog.received(request(2));
+        auditLog.stop();
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 3));
+
+        List<AuditLog.AuditRecord> records = new ArrayList<>();
+        AuditLog.read(path, records::add);
+        assertThat(records).extracting(AuditLog.AuditRecord::message).containsExactly(request(1));
+    }
+}
@@ -0,0 +1,186 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuctionDepthTest {
+    private Security security;
+    private OrderBook orderBook;
+    private Broker broker;
+    private Shareholder shareholder;
+
+    @AfterEach
+    void orderBookStaysConsistent() {
+        orderBook.checkConsistency();
+    }
+
+    @BeforeEach
+    void setupOrderBook() {
+        security = Security.builder().build();
+        orderBook = security.getOrderBook();
+        broker = Broker.builder().credit(100_000_000L).build();
+        shareholder = Shareholder.builder().build();
+        shareholder.incPosition(security, 100_000);
+    }
+
+    private Order order(long id, Side side, int quantity, int price) {
+        return new Order(id, security, side, quantity, price, broker, shareholder, 0);
+    }
+
+    @Test
+    void empty_book_has_no_opening_price() {
+        assertThat(orderBook.getAuctionDepth().openingPrice(0, 1)).isNull();
+    }
+
+    @Test
+    void opening_price_maximizes_the_traded_quantity() {
+        orderBook.enqueue(order(1, Side.BUY, 100, 15700));
+        orderBook.enqueue(order(2, Side.BUY, 200, 15500));
+        orderBook.enqueue(order(3, Side.SELL, 250, 15400));
+        orderBook.enqueue(order(4, Side.SELL, 100, 15600));
+
+        PriceQuantity openingPrice = orderBook.getAuctionDepth().openingPrice(15000, 1);
+
+        assertThat(openingPrice.getPrice()).isEqualTo(15400);
+        assertThat(openingPrice.getQuantity()).isEqualTo(250);
+    }
+
+    @Test
+    void opening_price_is_the_closest_best_price_to_the_last_trade() {
+        orderBook.enqueue(order(1, Side.BUY, 100, 15700));
+        orderBook.enqueue(order(2, Side.SELL, 100, 15400));
+
+        assertThat(orderBook.getAuctionDepth().openingPrice(15550, 1).getPrice()).isEqualTo(15550);
+        assertThat(orderBook.getAuctionDepth().openingPrice(16000, 1).getPrice()).isEqualTo(15700);
+        assertThat(orderBook.getAuctionDepth().openingPrice(15000, 1).getPrice()).isEqualTo(15400);
+    }
+
+    @Test
+    void opening_price_stays_on_the_tick_grid() {
+        orderBook.enqueue(order(1, Side.BUY, 100, 15700));
+        orderBook.enqueue(order(2, Side.SELL, 100, 15400));
+
+        assertThat(orderBook.getAuctionDepth().openingPrice(15549, 100).getPrice()).isEqualTo(15500);
+        assertThat(orderBook.getAuctionDepth().openingPrice(15551, 100).getPrice()).isEqualTo(15600);
+        assertThat(orderBook.getAuctionDepth().openingPrice(15550, 100).getPrice()).isEqualTo(15500);
+    }
+
+    @Test
+    void order_limits_off_the_tick_grid_are_candidates_too() {
+        orderBook.enqueue(order(1, Side.BUY, 100, 15530));
+        orderBook.enqueue(order(2, Side.SELL, 100, 15400));
+
+        assertThat(orderBook.getAuctionDepth().openingPrice(15520, 100).getPrice()).isEqualTo(15530);
+        assertThat(orderBook.getAuctionDepth().openingPrice(15460, 100).getPrice()).isEqualTo(15500);
+    }
+
+    @Test
+    void nothing_tradable_gives_zero_price_and_quantity() {
+        orderBook.enqueue(order(1, Side.BUY, 100, 15400));
+        orderBook.enqueue(order(2, Side.SELL, 100, 15700));
+
+        PriceQuantity openingPrice = orderBook.getAuctionDepth().openingPrice(15500, 1);
+
+        assertThat(openingPrice.getPrice()).isZero();
+        assertThat(openingPrice.getQuantity()).isZero();
+    }
+
+    @Test
+    void partial_fills_and_removals_update_the_depth() {
+        Order buy = order(1, Side.BUY, 300, 15700);
+        orderBook.enqueue(buy);
+        orderBook.enqueue(order(2, Side.SELL, 500, 15400));
+
+        buy.decreaseQuantity(100);
+        orderBook.updateQuantity(buy);
+        assertThat(orderBook.getAuctionDepth().openingPrice(15500, 1).getQuantity()).isEqualTo(200);
+
+        orderBook.removeByOrderId(Side.SELL, 2);
+        assertThat(orderBook.getAuctionDepth().openingPrice(15500, 1).getQuantity()).isZero();
+    }
+
+    @Test
+    void crossing_quantity_sums_the_levels_an_order_can_trade_with() {
+        orderBook.enqueue(order(1, Side.BUY, 100, 15700));
+        orderBook.enqueue(order(2, Side.BUY, 200, 15500));
+        orderBook.enqueue(order(3, Side.SELL, 250, 15800));
+        orderBook.enqueue(order(4, Side.SELL, 100, 15900));
+        AuctionDepth depth = orderBook.getAuctionDepth();
+
+        assertThat(depth.quantityCrossing(Side.BUY, 15500)).isEqualTo(300);
+        assertThat(depth.quantityCrossing(Side.BUY, 15600)).isEqualTo(100);
+        assertThat(depth.quantityCrossing(Side.BUY, 15800)).isZero();
+        assertThat(depth.quantityCrossing(Side.SELL, 15700)).isZero();
+        assertThat(depth.quantityCrossing(Side.SELL, 15800)).isEqualTo(250);
+        assertThat(depth.quantityCrossing(Side.SELL, Integer.MAX_VALUE)).isEqualTo(350);
+    }
+
+    @Test
+    void opening_price_agrees_with_scanning_every_candidate_price() {
+        Random random = new Random(7);
+        List<Order> resting = new ArrayList<>();
+        for (int step = 0; step < 2000; step++) {
+            if (resting.isEmpty() || random.nextInt(3) > 0) {
+                Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+                Order order = order(step, side, 1 + random.nextInt(50), 100 + random.nextInt(40));
+                orderBook.enqueue(order);
+                resting.add(order);
+            } else {
+                Order order = resting.get(random.nextInt(resting.size()));
+                if (random.nextBoolean()) {
+                    orderBook.removeByOrderId(order.getSide(), order.getOrderId());
+                    resting.remove(order);
+                } else {
+                    order.decreaseQuantity(random.nextInt(order.getQuantity()));
+                    orderBook.updateQuantity(order);
+                }
+            }
+            if (resting.isEmpty()) {
+                assertThat(orderBook.getAuctionDepth().openingPrice(0, 1)).isNull();
+                continue;
+            }
+            int lastTradePrice = 90 + random.nextInt(60);
+            int tickSize = 1 + random.nextInt(6);
+            PriceQuantity expected = scanEveryPrice(resting, lastTradePrice, tickSize);
+            PriceQuantity actual = orderBook.getAuctionDepth().openingPrice(lastTradePrice, tickSize);
+            assertThat(actual.getPrice()).isEqualTo(expected.getPrice());
+            assertThat(actual.getQuantity()).isEqualTo(expected.getQuantity());
+        }
+    }
+
+    private PriceQuantity scanEveryPrice(List<Order> orders, int lastTradePrice, int tickSize) {
+        int minPrice = orders.stream().mapToInt(Order::getPrice).min().orElseThrow();
+        int maxPrice = orders.stream().mapToInt(Order::getPrice).max().orElseThrow();
+        int bestPrice = 0;
+        int bestQuantity = 0;
+        for (int price = minPrice; price <= maxPrice; price++) {
+            int candidate = price;
+            if (price % tickSize != 0 && orders.stream().noneMatch(order -> order.getPrice() == candidate))
+                continue;
+            int buys = 0;
+            int sells = 0;
+            for (Order order : orders) {
+                if (order.getSide() == Side.BUY && order.getPrice() >= price)
+                    buys += order.getTotalQuantity();
+                if (order.getSide() == Side.SELL && order.getPrice() <= price)
+                    sells += order.getTotalQuantity();
+            }
+            int quantity = Math.min(buys, sells);
+            int distance = Math.abs(price - lastTradePrice);
+            int bestDistance = Math.abs(bestPrice - lastTradePrice);
+            if (quantity > bestQuantity || (quantity == bestQuantity && quantity > 0 && distance < bestDistance)) {
+                bestPrice = price;
+                bestQuantity = quantity;
+            }
+        }
+        return new PriceQuantity(bestPrice, bestQuantity);
+    }
+}
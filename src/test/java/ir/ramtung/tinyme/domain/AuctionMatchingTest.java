@@ -5,6 +5,7 @@ import ir.ramtung.tinyme.domain.entity.*;
 import ir.ramtung.tinyme.domain.service.OrderHandler;
 import ir.ramtung.tinyme.messaging.EventPublisher;
 import ir.ramtung.tinyme.messaging.Message;
+import ir.ramtung.tinyme.messaging.event.Event;
 import ir.ramtung.tinyme.messaging.event.OpeningPriceEvent;
 import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
 import ir.ramtung.tinyme.messaging.event.OrderActivatedEvent;
@@ -20,6 +21,7 @@ import ir.ramtung.tinyme.repository.BrokerRepository;
 import ir.ramtung.tinyme.repository.SecurityRepository;
 import ir.ramtung.tinyme.repository.ShareholderRepository;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -58,6 +60,11 @@ public class AuctionMatchingTest {
     @Autowired
     ShareholderRepository shareholderRepository;
 
+    @AfterEach
+    void orderBookStaysConsistent() {
+        security.getOrderBook().checkConsistency();
+    }
+
     @BeforeEach
     void setup() {
         security = Security.builder().isin("ABC").build();
@@ -261,7 +268,7 @@ public class AuctionMatchingTest {
         verify(eventPublisher, times(2))
                 .publish(new SecurityStateChangedEvent(security.getIsin(), MatchingState.AUCTION));
         verify(eventPublisher).publish(new OpeningPriceEvent("ABC", 15900, 350));
-        verify(eventPublisher).publish(new OrderActivatedEvent(3, 400));
+        verify(eventPublisher).publish(List.<Event>of(new OrderActivatedEvent(3, 400)));
         verify(eventPublisher).publish(new TradeEvent("ABC", 15900, 285, 600, 7));
         verify(eventPublisher).publish(new TradeEvent("ABC", 15900, 65, 600, 6));
         assertThat(broker1.getCredit()).isEqualTo(94435000L);
@@ -289,7 +296,7 @@ public class AuctionMatchingTest {
         verify(eventPublisher, times(2))
                 .publish(new SecurityStateChangedEvent(security.getIsin(), MatchingState.AUCTION));
         verify(eventPublisher).publish(new OpeningPriceEvent("ABC", 15900, 350));
-        verify(eventPublisher).publish(new OrderActivatedEvent(3, 400));
+        verify(eventPublisher).publish(List.<Event>of(new OrderActivatedEvent(3, 400)));
         verify(eventPublisher).publish(new TradeEvent("ABC", 15900, 285, 600, 7));
         verify(eventPublisher).publish(new TradeEvent("ABC", 15900, 65, 600, 6));
         assertThat(broker1.getCredit()).isEqualTo(94435000L);
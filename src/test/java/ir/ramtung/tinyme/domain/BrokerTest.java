@@ -0,0 +1,113 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.CreditDecisions;
+import ir.ramtung.tinyme.domain.entity.CreditReservation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BrokerTest {
+    private Broker broker;
+
+    @BeforeEach
+    void setup() {
+        broker = Broker.builder().brokerId(1).credit(1000).build();
+    }
+
+    @Test
+    void reservation_takes_credit_until_released() {
+        CreditReservation reservation = broker.reserveCredit(400);
+
+        assertThat(broker.getCredit()).isEqualTo(600);
+        assertThat(broker.getReservedCredit()).isEqualTo(400);
+
+        reservation.release();
+        assertThat(broker.getCredit()).isEqualTo(1000);
+        assertThat(broker.getReservedCredit()).isZero();
+    }
+
+    @Test
+    void committed_reservation_keeps_the_credit_spent() {
+        broker.reserveCredit(400).commit();
+
+        assertThat(broker.getCredit()).isEqualTo(600);
+        assertThat(broker.getReservedCredit()).isZero();
+    }
+
+    @Test
+    void reservation_is_settled_only_once() {
+        CreditReservation reservation = broker.reserveCredit(400);
+        reservation.release();
+        reservation.release();
+        reservation.commit();
+
+        assertThat(broker.getCredit()).isEqualTo(1000);
+        assertThat(broker.getReservedCredit()).isZero();
+    }
+
+    @Test
+    void reservation_beyond_the_credit_fails() {
+        assertThat(broker.reserveCredit(1001)).isNull();
+        assertThat(broker.getCredit()).isEqualTo(1000);
+    }
+
+    @Test
+    void incoming_credit_can_be_reserved() {
+        broker.increaseCreditBy(500);
+        assertThat(broker.reserveCredit(1500)).isNotNull();
+        assertThat(broker.getCredit()).isZero();
+    }
+
+    @Test
+    void concurrent_reservations_never_overdraw() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger granted = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    if (broker.reserveCredit(3) != null)
+                        granted.incrementAndGet();
+                    broker.increaseCreditBy(1);
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+
+        assertThat(broker.getCredit()).isNotNegative();
+        assertThat(broker.getCredit()).isEqualTo(1000 + 8000 - 3L * granted.get());
+    }
+
+    @Test
+    void credit_decisions_are_recorded_and_followed_on_replay() {
+        CreditDecisions decisions = new CreditDecisions();
+        decisions.apply(() -> {
+            assertThat(broker.tryDecreaseCreditBy(600)).isTrue();
+            assertThat(broker.hasEnoughCredit(600)).isFalse();
+            assertThat(broker.tryDecreaseCreditBy(600)).isFalse();
+        });
+        assertThat(decisions.size()).isEqualTo(3);
+
+        Broker replayed = Broker.builder().brokerId(1).credit(500).build();
+        CreditDecisions recorded = CreditDecisions.valueOf(decisions.toByteArray(), decisions.size());
+        recorded.apply(() -> {
+            assertThat(replayed.tryDecreaseCreditBy(600)).isTrue();
+            assertThat(replayed.hasEnoughCredit(600)).isFalse();
+            assertThat(replayed.tryDecreaseCreditBy(600)).isFalse();
+            assertThat(replayed.hasEnoughCredit(0)).isFalse();
+        });
+        assertThat(replayed.getCredit()).isEqualTo(-100);
+        assertThat(replayed.hasEnoughCredit(0)).isFalse();
+    }
+}
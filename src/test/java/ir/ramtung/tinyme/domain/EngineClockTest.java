@@ -0,0 +1,31 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.domain.entity.EngineClock;
+import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EngineClockTest {
+    @Test
+    void nanos_convert_to_and_from_local_date_times() {
+        LocalDateTime time = LocalDateTime.of(2024, 3, 1, 9, 30, 15, 123_456_789);
+        LocalDateTime beforeEpoch = LocalDateTime.of(1969, 12, 31, 23, 59, 59, 1);
+        assertThat(EngineClock.toLocalDateTime(EngineClock.toNanos(time))).isEqualTo(time);
+        assertThat(EngineClock.toLocalDateTime(EngineClock.toNanos(beforeEpoch))).isEqualTo(beforeEpoch);
+        assertThat(EngineClock.toNanos(null)).isEqualTo(EngineClock.NO_TIME);
+        assertThat(EngineClock.toLocalDateTime(EngineClock.NO_TIME)).isNull();
+    }
+
+    @Test
+    void sequences_and_times_never_go_backwards() {
+        long sequence = EngineClock.nextSequence();
+        long time = EngineClock.nanoTime();
+        OrderAcceptedEvent event = new OrderAcceptedEvent(1, 2);
+        assertThat(EngineClock.nextSequence()).isGreaterThan(sequence);
+        assertThat(event.getTimeNanos()).isGreaterThanOrEqualTo(time);
+        assertThat(event.getTime()).isEqualTo(EngineClock.toLocalDateTime(event.getTimeNanos()));
+    }
+}
@@ -11,6 +11,7 @@ import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
 import ir.ramtung.tinyme.repository.BrokerRepository;
 import ir.ramtung.tinyme.repository.SecurityRepository;
 import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,6 +45,11 @@ public class MEQTest {
     private Broker broker2;
     private Broker broker3;
 
+    @AfterEach
+    void orderBookStaysConsistent() {
+        security.getOrderBook().checkConsistency();
+    }
+
     @BeforeEach
     void setup() {
         securityRepository.clear();
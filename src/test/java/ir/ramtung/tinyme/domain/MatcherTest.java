@@ -3,6 +3,7 @@ package ir.ramtung.tinyme.domain;
 import ir.ramtung.tinyme.config.MockedJMSTestConfig;
 import ir.ramtung.tinyme.domain.entity.*;
 import ir.ramtung.tinyme.domain.service.Matcher;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,6 +17,8 @@ import java.util.List;
 
 import static ir.ramtung.tinyme.domain.entity.Side.BUY;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
 
 @SpringBootTest
 @Import(MockedJMSTestConfig.class)
@@ -29,6 +32,11 @@ public class MatcherTest {
     @Autowired
     private Matcher matcher;
 
+    @AfterEach
+    void orderBookStaysConsistent() {
+        security.getOrderBook().checkConsistency();
+    }
+
     @BeforeEach
     void setupOrderBook() {
         security = Security.builder().build();
@@ -149,4 +157,105 @@ public class MatcherTest {
         assertThat(security.getOrderBook().getBuyQueue().get(0).getQuantity()).isEqualTo(20);
 
     }
+
+    @Test
+    void rollback_puts_the_original_resting_orders_back_with_their_quantities() {
+        Order order = new Order(11, security, Side.SELL, 400, 15500, broker, shareholder, 400);
+        MatchResult result = matcher.execute(order);
+
+        assertThat(result.outcome()).isEqualTo(MatchingOutcome.NOT_ENOUGH_QUANTITIES_MATCHED);
+        assertThat(orderBook.getBuyQueue()).hasSize(5);
+        assertThat(orderBook.getBuyQueue().get(0)).isSameAs(orders.get(0));
+        assertThat(orderBook.getBuyQueue().get(1)).isSameAs(orders.get(1));
+        assertThat(orders.get(0).getQuantity()).isEqualTo(304);
+        assertThat(orders.get(1).getQuantity()).isEqualTo(43);
+    }
+
+    @Test
+    void trades_keep_the_ids_and_parties_of_both_orders() {
+        Order order = new Order(11, security, Side.SELL, 100, 15600, broker, shareholder, 0);
+        Trade trade = matcher.execute(order).trades().getFirst();
+
+        assertThat(trade.getBuyOrderId()).isEqualTo(1);
+        assertThat(trade.getSellOrderId()).isEqualTo(11);
+        assertThat(trade.getBuyBroker()).isSameAs(orders.get(0).getBroker());
+        assertThat(trade.getSellShareholder()).isSameAs(order.getShareholder());
+        assertThat(trade.getPrice()).isEqualTo(15700);
+        assertThat(trade.getQuantity()).isEqualTo(100);
+    }
+
+    @Test
+    void rollback_undoes_every_fill_of_a_replenished_iceberg_and_the_credit_moved() {
+        security = Security.builder().isin("TEST").build();
+        Broker buyer = spy(Broker.builder().brokerId(2).credit(950).build());
+        Broker seller = Broker.builder().brokerId(3).credit(0).build();
+        shareholder.incPosition(security, 1_000);
+        IcebergOrder iceberg = new IcebergOrder(1, security, Side.SELL, 100, 10, seller, shareholder, 30, 0);
+        Order other = new Order(2, security, Side.SELL, 20, 10, seller, shareholder, 0);
+        security.getOrderBook().enqueue(iceberg);
+        security.getOrderBook().enqueue(other);
+
+        MatchResult result = matcher.execute(new Order(3, security, BUY, 200, 10, buyer, shareholder, 50));
+
+        assertThat(result.outcome()).isEqualTo(MatchingOutcome.NOT_ENOUGH_CREDIT);
+        verify(buyer, times(4)).tryReserveCredit(anyLong());
+        assertThat(security.getOrderBook().getSellQueue()).containsExactly(iceberg, other);
+        assertThat(iceberg.getTotalQuantity()).isEqualTo(100);
+        assertThat(iceberg.getDisplayedQuantity()).isEqualTo(30);
+        assertThat(other.getQuantity()).isEqualTo(20);
+        assertThat(buyer.getCredit()).isEqualTo(950);
+        assertThat(buyer.getReservedCredit()).isZero();
+        assertThat(seller.getCredit()).isZero();
+        security.getOrderBook().checkConsistency();
+    }
+
+    @Test
+    void sellers_proceeds_cannot_be_spent_elsewhere_before_the_match_commits() {
+        security = Security.builder().isin("TEST").build();
+        Broker buyer = spy(Broker.builder().brokerId(2).credit(1_000).build());
+        Broker seller = Broker.builder().brokerId(3).credit(0).build();
+        shareholder.incPosition(security, 1_000);
+        security.getOrderBook().enqueue(new Order(1, security, Side.SELL, 100, 10, seller, shareholder, 0));
+        security.getOrderBook().enqueue(new Order(2, security, Side.SELL, 100, 10, seller, shareholder, 0));
+        List<Boolean> spentOnOtherShard = new ArrayList<>();
+        doAnswer(invocation -> {
+            spentOnOtherShard.add(seller.tryDecreaseCreditBy(1_000));
+            return invocation.callRealMethod();
+        }).when(buyer).tryReserveCredit(anyLong());
+
+        MatchResult result = matcher.execute(new Order(3, security, BUY, 300, 10, buyer, shareholder, 0));
+
+        assertThat(result.outcome()).isEqualTo(MatchingOutcome.NOT_ENOUGH_CREDIT);
+        assertThat(spentOnOtherShard).containsExactly(false, false);
+        assertThat(seller.getCredit()).isZero();
+        assertThat(buyer.getCredit()).isEqualTo(1_000);
+    }
+
+    @Test
+    void order_that_cannot_reach_its_minimum_execution_quantity_is_rejected_without_trading() {
+        Broker seller = spy(Broker.builder().brokerId(3).credit(0).build());
+        Order order = new Order(11, security, Side.SELL, 2000, 15450, seller, shareholder, 1500);
+
+        MatchResult result = matcher.execute(order);
+
+        assertThat(result.outcome()).isEqualTo(MatchingOutcome.NOT_ENOUGH_QUANTITIES_MATCHED);
+        assertThat(order.getQuantity()).isEqualTo(2000);
+        verify(seller, never()).increaseCreditBy(anyLong());
+        assertThat(orderBook.getBuyQueue()).containsExactlyElementsOf(orders.subList(0, 5));
+    }
+
+    @Test
+    void buy_order_whose_broker_cannot_pay_for_the_first_trade_is_rejected_without_trading() {
+        Broker buyer = spy(Broker.builder().brokerId(2).credit(1_000).build());
+        Broker seller = orders.get(5).getBroker();
+        long sellerCredit = seller.getCredit();
+        Order order = new Order(11, security, BUY, 100, 15800, buyer, shareholder, 0);
+
+        MatchResult result = matcher.execute(order);
+
+        assertThat(result.outcome()).isEqualTo(MatchingOutcome.NOT_ENOUGH_CREDIT);
+        verify(buyer, never()).tryReserveCredit(anyLong());
+        assertThat(seller.getCredit()).isEqualTo(sellerCredit);
+        assertThat(orderBook.getSellQueue()).containsExactlyElementsOf(orders.subList(5, 10));
+    }
 }
@@ -0,0 +1,93 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.domain.service.MatchingShards;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MatchingShardsTest {
+    private MatchingShards matchingShards;
+
+    @BeforeEach
+    void setup() {
+        matchingShards = new MatchingShards(4);
+        matchingShards.start();
+    }
+
+    @AfterEach
+    void shutdown() {
+        matchingShards.stop();
+    }
+
+    @Test
+    void requests_on_the_same_security_run_in_arrival_order() {
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 1000; i++) {
+            int request = i;
+            matchingShards.execute("ABC", () -> processed.add(request));
+        }
+        matchingShards.stop();
+        assertThat(processed).hasSize(1000).isSorted();
+    }
+
+    @Test
+    void a_security_is_always_handled_by_the_same_thread() {
+        Map<String, Thread> threadByIsin = new ConcurrentHashMap<>();
+        List<String> switched = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 100; i++) {
+            for (String isin : List.of("ABC", "XYZ", "DEF", "GHI")) {
+                matchingShards.execute(isin, () -> {
+                    if (threadByIsin.putIfAbsent(isin, Thread.currentThread()) != null
+                            && threadByIsin.get(isin) != Thread.currentThread())
+                        switched.add(isin);
+                });
+            }
+        }
+        matchingShards.stop();
+        assertThat(switched).isEmpty();
+        assertThat(threadByIsin).hasSize(4);
+    }
+
+    @Test
+    void securities_on_different_shards_are_processed_in_parallel() throws InterruptedException {
+        String first = "ABC";
+        String second = List.of("XYZ", "DEF", "GHI", "JKL", "MNO").stream()
+                .filter(isin -> matchingShards.shardOf(isin) != matchingShards.shardOf(first))
+                .findFirst().orElseThrow();
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        CountDownLatch done = new CountDownLatch(2);
+        for (String isin : List.of(first, second)) {
+            matchingShards.execute(isin, () -> {
+                bothStarted.countDown();
+                try {
+                    if (bothStarted.await(5, TimeUnit.SECONDS))
+                        done.countDown();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void a_failing_request_does_not_stop_its_shard() {
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        matchingShards.execute("ABC", () -> {
+            throw new IllegalStateException("broken request");
+        });
+        matchingShards.execute("ABC", () -> processed.add("next"));
+        matchingShards.stop();
+        assertThat(processed).containsExactly("next");
+    }
+}
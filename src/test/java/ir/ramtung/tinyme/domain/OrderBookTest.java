@@ -1,18 +1,27 @@
 package ir.ramtung.tinyme.domain;
 
 import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
 
 class OrderBookTest {
     private Security security;
     private List<Order> orders;
 
+    @AfterEach
+    void orderBookStaysConsistent() {
+        security.getOrderBook().checkConsistency();
+    }
+
     @BeforeEach
     void setupOrderBook() {
         security = Security.builder().build();
@@ -76,4 +85,100 @@ class OrderBookTest {
         orderBook.removeByOrderId(Side.SELL, 10);
         assertThat(orderBook.getSellQueue()).isEqualTo(orders.subList(5, 9));
     }
-}
\ No newline at end of file
+
+    @Test
+    void orders_on_the_same_price_keep_arrival_order() {
+        OrderBook orderBook = security.getOrderBook();
+        Order order = new Order(11, security, Side.BUY, 100, 15450, orders.get(0).getBroker(),
+                orders.get(0).getShareholder(), 0);
+        orderBook.enqueue(order);
+        assertThat(orderBook.getBuyQueue()).extracting("orderId")
+                .containsExactly(1L, 2L, 3L, 4L, 11L, 5L);
+    }
+
+    @Test
+    void better_price_becomes_the_top_of_the_book() {
+        OrderBook orderBook = security.getOrderBook();
+        Order order = new Order(11, security, Side.SELL, 100, 15790, orders.get(0).getBroker(),
+                orders.get(0).getShareholder(), 0);
+        orderBook.enqueue(order);
+        assertThat(orderBook.getQueue(Side.SELL).first()).isEqualTo(order);
+    }
+
+    @Test
+    void removing_the_whole_best_level_exposes_the_next_level() {
+        OrderBook orderBook = security.getOrderBook();
+        orderBook.removeFirst(Side.BUY);
+        orderBook.removeFirst(Side.BUY);
+        assertThat(orderBook.getQueue(Side.BUY).first()).isEqualTo(orders.get(2));
+        assertThat(orderBook.getQueue(Side.BUY).size()).isEqualTo(3);
+    }
+
+    @Test
+    void removes_an_order_from_the_middle_of_a_price_level() {
+        OrderBook orderBook = security.getOrderBook();
+        Order order = new Order(11, security, Side.BUY, 100, 15450, orders.get(0).getBroker(),
+                orders.get(0).getShareholder(), 0);
+        orderBook.enqueue(order);
+        assertThat(orderBook.removeByOrderId(Side.BUY, 4)).isTrue();
+        assertThat(orderBook.findByOrderId(Side.BUY, 4)).isNull();
+        assertThat(orderBook.getBuyQueue()).extracting("orderId")
+                .containsExactly(1L, 2L, 3L, 11L, 5L);
+    }
+
+    @Test
+    void finds_an_order_that_was_put_back_after_removal() {
+        OrderBook orderBook = security.getOrderBook();
+        Order order = orderBook.findByOrderId(Side.SELL, 8);
+        orderBook.restoreSellOrder(order);
+        assertThat(orderBook.findByOrderId(Side.SELL, 8)).isEqualTo(order);
+        assertThat(orderBook.getSellQueue()).extracting("orderId")
+                .containsExactly(6L, 8L, 7L, 9L, 10L);
+    }
+
+    @Test
+    void consistency_check_detects_an_order_resting_on_the_wrong_price_level() {
+        OrderBook orderBook = security.getOrderBook();
+        orderBook.findByOrderId(Side.BUY, 3).updateFromRequest(EnterOrderRq.createUpdateOrderRq(1,
+                security.getIsin(), 3, LocalDateTime.now(), Side.BUY, 445, 15600, 0, 0, 0, 0));
+        assertThatIllegalStateException().isThrownBy(orderBook::checkConsistency);
+        orderBook.removeByOrderId(Side.BUY, 3);
+    }
+
+    @Test
+    void committed_sell_quantity_follows_the_sell_queue() {
+        OrderBook orderBook = security.getOrderBook();
+        Shareholder shareholder = orders.get(5).getShareholder();
+        assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(1840);
+
+        orderBook.removeByOrderId(Side.SELL, 8);
+        assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(1040);
+
+        Order sell = orderBook.findByOrderId(Side.SELL, 6);
+        sell.decreaseQuantity(50);
+        orderBook.updateQuantity(sell);
+        assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(990);
+    }
+
+    @Test
+    void committed_sell_quantity_includes_inactive_stop_limit_orders() {
+        OrderBook orderBook = security.getOrderBook();
+        Shareholder shareholder = orders.get(5).getShareholder();
+        StopLimitOrder stopLimitOrder = new StopLimitOrder(11, security, Side.SELL, 100, 15000,
+                orders.get(5).getBroker(), shareholder, LocalDateTime.now(), 15100);
+        orderBook.enqueueInactiveStopLimitOrder(stopLimitOrder);
+        assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(1940);
+
+        orderBook.removeInActiveStopLimitByOrderId(Side.SELL, 11);
+        assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(1840);
+    }
+
+    @Test
+    void committed_sell_quantity_is_tracked_per_shareholder() {
+        OrderBook orderBook = security.getOrderBook();
+        Shareholder other = Shareholder.builder().shareholderId(2).build();
+        orderBook.enqueue(new Order(11, security, Side.SELL, 70, 15900, orders.get(5).getBroker(), other, 0));
+        assertThat(orderBook.totalSellQuantityByShareholder(other)).isEqualTo(70);
+        assertThat(orderBook.totalSellQuantityByShareholder(orders.get(5).getShareholder())).isEqualTo(1840);
+    }
+}
@@ -10,6 +10,7 @@ import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
 import ir.ramtung.tinyme.repository.BrokerRepository;
 import ir.ramtung.tinyme.repository.SecurityRepository;
 import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -41,6 +42,11 @@ public class OrderHandlerCreditCheckRollbackTest {
         private Security security;
         private Shareholder shareholder;
 
+        @AfterEach
+        void orderBookStaysConsistent() {
+                security.getOrderBook().checkConsistency();
+        }
+
         @BeforeEach
         void setup() {
                 securityRepository.clear();
@@ -13,6 +13,7 @@ import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
 import ir.ramtung.tinyme.repository.BrokerRepository;
 import ir.ramtung.tinyme.repository.SecurityRepository;
 import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -48,6 +49,11 @@ public class OrderHandlerTest {
     private Broker broker2;
     private Broker broker3;
 
+    @AfterEach
+    void orderBookStaysConsistent() {
+        security.getOrderBook().checkConsistency();
+    }
+
     @BeforeEach
     void setup() {
         securityRepository.clear();
@@ -392,6 +398,23 @@ public class OrderHandlerTest {
         assertThat(broker1.getCredit()).isEqualTo(100_000 - 1_500);
     }
 
+    @Test
+    void failed_update_keeps_the_order_in_its_place_in_the_queue() {
+        Broker broker1 = Broker.builder().brokerId(1).credit(100_000).build();
+        brokerRepository.addBroker(broker1);
+        for (long orderId = 100; orderId <= 300; orderId += 100)
+            orderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRq(orderId, "ABC", orderId, LocalDateTime.now(),
+                    Side.BUY, 30, 500, broker1.getBrokerId(), shareholder.getShareholderId(), 0, 0));
+
+        orderHandler.handleEnterOrder(EnterOrderRq.createUpdateOrderRq(4, "ABC", 200, LocalDateTime.now(), Side.BUY,
+                300, 500, broker1.getBrokerId(), shareholder.getShareholderId(), 0, 0));
+
+        verify(eventPublisher).publish(new OrderRejectedEvent(4, 200, List.of(Message.BUYER_HAS_NOT_ENOUGH_CREDIT)));
+        assertThat(security.getOrderBook().getBuyQueue()).extracting(Order::getOrderId)
+                .containsExactly(100L, 200L, 300L);
+        assertThat(broker1.getCredit()).isEqualTo(100_000 - 3 * 15_000);
+    }
+
     @Test
     void update_sell_order_changing_price_with_no_trades_does_not_changes_sellers_credit() {
         Broker broker1 = Broker.builder().brokerId(1).credit(100_000).build();
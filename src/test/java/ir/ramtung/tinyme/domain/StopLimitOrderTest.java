@@ -11,8 +11,10 @@ import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
 import ir.ramtung.tinyme.repository.BrokerRepository;
 import ir.ramtung.tinyme.repository.SecurityRepository;
 import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
@@ -43,6 +45,11 @@ public class StopLimitOrderTest {
     private Broker broker2;
     private Broker broker3;
 
+    @AfterEach
+    void orderBookStaysConsistent() {
+        security.getOrderBook().checkConsistency();
+    }
+
     @BeforeEach
     void setup() {
         securityRepository.clear();
@@ -667,4 +674,41 @@ public class StopLimitOrderTest {
         assertThat(broker2.getCredit()).isEqualTo(90_000);
         assertThat(broker3.getCredit()).isEqualTo(512000);
     }
+
+    @Test
+    void cascade_events_are_published_in_activation_order_after_the_triggering_order() {
+        security.getOrderBook().enqueue(new Order(110, security, Side.SELL, 10, 450, broker1, shareholder, 0));
+        security.getOrderBook().enqueue(new Order(120, security, Side.SELL, 10, 500, broker1, shareholder, 0));
+        security.getOrderBook().enqueue(new Order(130, security, Side.SELL, 10, 600, broker1, shareholder, 0));
+        orderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRq(1, "ABC", 300, LocalDateTime.now(),
+                Side.BUY, 10, 500, broker2.getBrokerId(), shareholder.getShareholderId(),
+                0, 0, 450));
+        orderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRq(2, "ABC", 400, LocalDateTime.now(),
+                Side.BUY, 10, 600, broker2.getBrokerId(), shareholder.getShareholderId(),
+                0, 0, 500));
+
+        orderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRq(3, "ABC", 500, LocalDateTime.now(),
+                Side.BUY, 10, 450, broker3.getBrokerId(), shareholder.getShareholderId(),
+                0, 0));
+
+        var inOrder = inOrder(eventPublisher);
+        inOrder.verify(eventPublisher).publish(new OrderAcceptedEvent(3, 500));
+        inOrder.verify(eventPublisher).publish(argThat((Event event) -> event instanceof OrderExecutedEvent executed
+                && executed.getOrderId() == 500));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Event>> cascade = ArgumentCaptor.forClass(List.class);
+        inOrder.verify(eventPublisher).publish(cascade.capture());
+        assertThat(cascade.getValue()).hasSize(4);
+        assertThat(cascade.getValue().get(0)).isEqualTo(new OrderActivatedEvent(1, 300));
+        assertThat(cascade.getValue().get(1)).isInstanceOfSatisfying(OrderExecutedEvent.class, executed -> {
+            assertThat(executed.getOrderId()).isEqualTo(300);
+            assertThat(executed.getTrades().get(0).price()).isEqualTo(500);
+        });
+        assertThat(cascade.getValue().get(2)).isEqualTo(new OrderActivatedEvent(2, 400));
+        assertThat(cascade.getValue().get(3)).isInstanceOfSatisfying(OrderExecutedEvent.class, executed -> {
+            assertThat(executed.getOrderId()).isEqualTo(400);
+            assertThat(executed.getTrades().get(0).price()).isEqualTo(600);
+        });
+        assertThat(security.getOrderBook().getSellQueue().isEmpty()).isTrue();
+    }
 }
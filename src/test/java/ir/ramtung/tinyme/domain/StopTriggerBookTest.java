@@ -0,0 +1,96 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StopTriggerBookTest {
+    private Security security;
+    private Broker broker;
+    private Shareholder shareholder;
+    private StopTriggerBook buyOrders;
+    private StopTriggerBook sellOrders;
+    private LocalDateTime now;
+
+    @AfterEach
+    void triggerBooksStayConsistent() {
+        buyOrders.checkConsistency();
+        sellOrders.checkConsistency();
+    }
+
+    @BeforeEach
+    void setup() {
+        security = Security.builder().build();
+        broker = Broker.builder().credit(100_000_000L).build();
+        shareholder = Shareholder.builder().build();
+        buyOrders = new StopTriggerBook(Side.BUY);
+        sellOrders = new StopTriggerBook(Side.SELL);
+        now = LocalDateTime.now();
+    }
+
+    private StopLimitOrder stopLimitOrder(long id, Side side, double stopPrice, int secondsAfterNow) {
+        return new StopLimitOrder(id, security, side, 100, 15000, broker, shareholder,
+                now.plusSeconds(secondsAfterNow), stopPrice);
+    }
+
+    @Test
+    void buy_orders_activate_by_ascending_stop_price_then_sequence() {
+        StopLimitOrder earlier = stopLimitOrder(2, Side.BUY, 15100, 2);
+        StopLimitOrder later = stopLimitOrder(3, Side.BUY, 15100, 1);
+        earlier.stamp(1);
+        later.stamp(2);
+        buyOrders.add(stopLimitOrder(1, Side.BUY, 15300, 0));
+        buyOrders.add(later);
+        buyOrders.add(earlier);
+        buyOrders.add(stopLimitOrder(4, Side.BUY, 15200, 3));
+
+        assertThat(buyOrders).extracting("orderId").containsExactly(2L, 3L, 4L, 1L);
+    }
+
+    @Test
+    void sell_orders_activate_by_descending_stop_price() {
+        sellOrders.add(stopLimitOrder(1, Side.SELL, 15100, 0));
+        sellOrders.add(stopLimitOrder(2, Side.SELL, 15300, 1));
+        sellOrders.add(stopLimitOrder(3, Side.SELL, 15200, 2));
+
+        assertThat(sellOrders).extracting("orderId").containsExactly(2L, 3L, 1L);
+    }
+
+    @Test
+    void only_a_triggered_first_order_is_polled() {
+        buyOrders.add(stopLimitOrder(1, Side.BUY, 15200, 0));
+        buyOrders.add(stopLimitOrder(2, Side.BUY, 15100, 1));
+
+        assertThat(buyOrders.pollTriggered(15000)).isNull();
+        assertThat(buyOrders.pollTriggered(15150).getOrderId()).isEqualTo(2);
+        assertThat(buyOrders.pollTriggered(15150)).isNull();
+        assertThat(buyOrders.size()).isEqualTo(1);
+    }
+
+    @Test
+    void a_trade_price_triggers_a_range_of_stop_prices() {
+        sellOrders.add(stopLimitOrder(1, Side.SELL, 15100, 0));
+        sellOrders.add(stopLimitOrder(2, Side.SELL, 15300, 1));
+        sellOrders.add(stopLimitOrder(3, Side.SELL, 15200, 2));
+        sellOrders.add(stopLimitOrder(4, Side.SELL, 15200, 3));
+
+        assertThat(sellOrders.pollAllTriggered(15200)).extracting("orderId").containsExactly(2L, 3L, 4L);
+        assertThat(sellOrders).extracting("orderId").containsExactly(1L);
+        assertThat(sellOrders.findByOrderId(3)).isNull();
+    }
+
+    @Test
+    void removes_an_order_by_id() {
+        buyOrders.add(stopLimitOrder(1, Side.BUY, 15100, 0));
+        buyOrders.add(stopLimitOrder(2, Side.BUY, 15100, 1));
+
+        assertThat(buyOrders.removeByOrderId(1).getOrderId()).isEqualTo(1);
+        assertThat(buyOrders.removeByOrderId(1)).isNull();
+        assertThat(buyOrders.first().getOrderId()).isEqualTo(2);
+    }
+}
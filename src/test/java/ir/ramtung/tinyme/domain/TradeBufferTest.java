@@ -0,0 +1,54 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TradeBufferTest {
+    private Security security;
+    private Broker broker;
+    private Shareholder shareholder;
+
+    @BeforeEach
+    void setup() {
+        security = Security.builder().build();
+        broker = Broker.builder().credit(100_000_000L).build();
+        shareholder = Shareholder.builder().build();
+    }
+
+    private Trade trade(long buyId, int price, int quantity) {
+        return new Trade(security, price, quantity,
+                new Order(buyId, security, Side.BUY, quantity, price, broker, shareholder, 0),
+                new Order(100 + buyId, security, Side.SELL, quantity, price, broker, shareholder, 0));
+    }
+
+    @Test
+    void total_quantity_follows_the_trades_added() {
+        TradeBuffer trades = new TradeBuffer();
+        for (int i = 1; i <= 20; i++)
+            trades.add(trade(i, 1000 + i, i));
+
+        assertThat(trades).hasSize(20);
+        assertThat(trades.getFirst().getBuyOrderId()).isEqualTo(1);
+        assertThat(trades.getLast().getBuyOrderId()).isEqualTo(20);
+        assertThat(trades.totalQuantity()).isEqualTo(210);
+    }
+
+    @Test
+    void appending_a_buffer_adds_its_trades_and_total_quantity() {
+        TradeBuffer first = new TradeBuffer();
+        first.add(trade(1, 1000, 10));
+        TradeBuffer second = new TradeBuffer();
+        second.add(trade(2, 2000, 5));
+        second.add(trade(3, 3000, 1));
+
+        first.addAll(second);
+
+        assertThat(first).isEqualTo(List.of(trade(1, 1000, 10), trade(2, 2000, 5), trade(3, 3000, 1)));
+        assertThat(first.totalQuantity()).isEqualTo(16);
+    }
+}
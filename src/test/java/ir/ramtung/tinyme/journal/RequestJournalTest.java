@@ -0,0 +1,174 @@
+package ir.ramtung.tinyme.journal;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.CreditDecisions;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.EventPublisher;
+import ir.ramtung.tinyme.messaging.request.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class RequestJournalTest {
+    @TempDir
+    Path directory;
+    private RequestJournal journal;
+
+    @AfterEach
+    void stopJournal() {
+        if (journal != null && journal.isRunning())
+            journal.stop();
+    }
+
+    private RequestJournal startJournal(Path path, JournalReplayer replayer) {
+        journal = new RequestJournal(path.toString(), FsyncPolicy.EVERY_COMMIT, 100, 16, 1024, replayer,
+                mock(EventPublisher.class));
+        journal.start();
+        return journal;
+    }
+
+    private List<Request> requests() {
+        LocalDateTime entryTime = LocalDateTime.of(2024, 3, 1, 9, 30, 15, 123_456_789);
+        ChangeMatchStateRq changeMatchStateRq = ChangeMatchStateRq.changeMatchStateRq("ABC", MatchingState.AUCTION);
+        changeMatchStateRq.setRequestId(4);
+        DeleteOrderRq deleteOrderRq = new DeleteOrderRq(3, "ABC", Side.SELL, 200);
+        deleteOrderRq.setEntryTime(entryTime);
+        return List.of(
+                EnterOrderRq.createNewOrderRq(1, "ABC", 100, entryTime, Side.BUY, 300, 15450, 1, 2, 50, 10),
+                EnterOrderRq.createUpdateOrderRq(2, "ABC", 100, entryTime, Side.BUY, 200, 15500, 1, 2, 0, 0, 15400),
+                deleteOrderRq,
+                changeMatchStateRq);
+    }
+
+    @Test
+    void codec_round_trips_every_request_type() {
+        for (Request request : requests()) {
+            ByteBuffer buffer = ByteBuffer.allocate(JournalCodec.encodedSize(request));
+            JournalCodec.encode(request, buffer);
+            assertThat(buffer.hasRemaining()).isFalse();
+            buffer.flip();
+            assertThat(JournalCodec.completeRecordSize(buffer)).isEqualTo(buffer.limit());
+            assertThat(JournalCodec.decode(buffer)).isEqualTo(request);
+        }
+    }
+
+    @Test
+    void corrupt_record_is_not_decoded() {
+        Request request = requests().get(0);
+        ByteBuffer buffer = ByteBuffer.allocate(JournalCodec.encodedSize(request));
+        JournalCodec.encode(request, buffer);
+        buffer.put(10, (byte) (buffer.get(10) ^ 1));
+        buffer.flip();
+        assertThat(JournalCodec.decode(buffer)).isNull();
+        assertThat(buffer.position()).isZero();
+    }
+
+    @Test
+    void requests_are_processed_after_commit_in_journal_order() throws Exception {
+        List<Long> processed = Collections.synchronizedList(new ArrayList<>());
+        startJournal(directory.resolve("requests.journal"), mock(JournalReplayer.class));
+        for (Request request : requests())
+            journal.append(request, () -> processed.add(request.getRequestId()));
+        journal.stop();
+
+        assertThat(processed).containsExactly(1L, 2L, 3L, 4L);
+        List<Request> journaled = new ArrayList<>();
+        RequestJournal.read(directory.resolve("requests.journal"), journaled::add);
+        assertThat(journaled).isEqualTo(requests());
+    }
+
+    @Test
+    void journal_is_replayed_on_start() {
+        Path path = directory.resolve("requests.journal");
+        startJournal(path, mock(JournalReplayer.class));
+        requests().forEach(request -> journal.append(request, () -> {}));
+        journal.stop();
+
+        JournalReplayer replayer = mock(JournalReplayer.class);
+        startJournal(path, replayer);
+
+        ArgumentCaptor<Request> replayed = ArgumentCaptor.forClass(Request.class);
+        verify(replayer, times(4)).replay(replayed.capture());
+        assertThat(replayed.getAllValues()).isEqualTo(requests());
+    }
+
+    @Test
+    void credit_decisions_are_replayed_with_their_request() {
+        Path path = directory.resolve("requests.journal");
+        Broker broker = Broker.builder().brokerId(1).credit(100).build();
+        startJournal(path, mock(JournalReplayer.class));
+        List<Request> requests = requests();
+        journal.append(requests.get(0), position -> {
+            CreditDecisions decisions = new CreditDecisions();
+            decisions.apply(() -> broker.tryDecreaseCreditBy(300));
+            journal.recordCreditDecisions(position, decisions);
+        });
+        journal.append(requests.get(1), () -> {});
+        journal.stop();
+
+        JournalReplayer replayer = mock(JournalReplayer.class);
+        startJournal(path, replayer);
+
+        ArgumentCaptor<CreditDecisions> decisions = ArgumentCaptor.forClass(CreditDecisions.class);
+        verify(replayer).replay(eq(requests.get(0)), decisions.capture());
+        verify(replayer).replay(requests.get(1));
+        Broker replayed = Broker.builder().brokerId(1).credit(1000).build();
+        decisions.getValue().apply(() -> assertThat(replayed.tryDecreaseCreditBy(300)).isFalse());
+        assertThat(replayed.getCredit()).isEqualTo(1000);
+    }
+
+    @Test
+    void torn_record_at_the_end_is_cut_off_before_appending() throws Exception {
+        Path path = directory.resolve("requests.journal");
+        startJournal(path, mock(JournalReplayer.class));
+        requests().forEach(request -> journal.append(request, () -> {}));
+        journal.stop();
+        long validLength = Files.size(path);
+        Files.write(path, new byte[] {40, 0, 0}, StandardOpenOption.APPEND);
+
+        JournalReplayer replayer = mock(JournalReplayer.class);
+        startJournal(path, replayer);
+        assertThat(Files.size(path)).isEqualTo(validLength);
+        journal.append(requests().get(3), () -> {});
+        journal.stop();
+
+        verify(replayer, times(4)).replay(any());
+        List<Request> journaled = new ArrayList<>();
+        RequestJournal.read(path, journaled::add);
+        assertThat(journaled).hasSize(5);
+    }
+
+    @Test
+    void checkpoint_empties_the_journal() throws Exception {
+        Path path = directory.resolve("requests.journal");
+        startJournal(path, mock(JournalReplayer.class));
+        requests().forEach(request -> journal.append(request, () -> {}));
+        journal.stop();
+
+        journal.checkpoint();
+
+        assertThat(Files.size(path)).isZero();
+    }
+
+    @Test
+    void disabled_journal_processes_requests_right_away() {
+        journal = new RequestJournal("", FsyncPolicy.NONE, 100, 16, 16, mock(JournalReplayer.class),
+                mock(EventPublisher.class));
+        List<Long> processed = new ArrayList<>();
+        journal.append(requests().get(0), () -> processed.add(1L));
+        assertThat(processed).containsExactly(1L);
+    }
+}
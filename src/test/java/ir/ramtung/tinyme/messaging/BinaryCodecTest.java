@@ -0,0 +1,114 @@
+package ir.ramtung.tinyme.messaging;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.event.*;
+import ir.ramtung.tinyme.messaging.request.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BinaryCodecTest {
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 3, 1, 9, 30, 15, 123_456_789);
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static List<Object> requests() {
+        DeleteOrderRq deleteOrderRq = new DeleteOrderRq(2, "ABC", Side.SELL, 12);
+        deleteOrderRq.setEntryTime(TIME);
+        ChangeMatchStateRq changeMatchStateRq = ChangeMatchStateRq.changeMatchStateRq("ABC", MatchingState.AUCTION);
+        changeMatchStateRq.setRequestId(3);
+        return List.of(
+                EnterOrderRq.createNewOrderRq(1, "ABC", 11, TIME, Side.BUY, 300, 15_450, 7, 8, 100, 50, 15_000),
+                EnterOrderRq.createUpdateOrderRq(4, "ABC", 11, TIME, Side.BUY, 200, 15_400, 7, 8, 0, 0),
+                EnterOrderRq.createNewOrderRq(5, "ابج", 13, null, Side.SELL, 10, 1, 7, 8, 0, 0),
+                deleteOrderRq,
+                changeMatchStateRq);
+    }
+
+    private static List<Event> events() {
+        List<Event> events = new ArrayList<>(List.of(
+                new OrderAcceptedEvent(1, 11),
+                new OrderActivatedEvent(1, 11),
+                new OrderDeletedEvent(2, 12),
+                new OrderUpdatedEvent(4, 11),
+                new OrderExecutedEvent(1, 11, List.of(new TradeDTO("ABC", 15_450, 100, 11, 9),
+                        new TradeDTO("ABC", 15_400, 200, 11, 10))),
+                new OrderExecutedEvent(1, 11, List.of()),
+                new OrderRejectedEvent(1, 11, List.of("Unknown broker", "Invalid quantity")),
+                new OpeningPriceEvent("ABC", 15_450, 300),
+                new SecurityStateChangedEvent("ABC", MatchingState.CONTINUOUS),
+                new TradeEvent("ABC", 15_450, 100, 11, 9)));
+        events.forEach(event -> event.setTime(TIME));
+        return events;
+    }
+
+    @Test
+    void requests_survive_a_round_trip() {
+        for (Object request : requests())
+            assertThat(BinaryCodec.decode(BinaryCodec.encode(request))).isEqualTo(request);
+    }
+
+    @Test
+    void events_survive_a_round_trip_with_their_time() {
+        for (Event event : events()) {
+            Event decoded = (Event) BinaryCodec.decode(BinaryCodec.encode(event));
+            assertThat(decoded).isEqualTo(event);
+            assertThat(decoded.getTime()).isEqualTo(TIME);
+        }
+    }
+
+    @Test
+    void binary_and_json_decode_to_the_same_messages_and_binary_is_smaller() throws Exception {
+        List<Object> messages = new ArrayList<>(requests());
+        messages.addAll(events());
+        for (Object message : messages) {
+            byte[] json = objectMapper.writeValueAsBytes(message);
+            byte[] binary = BinaryCodec.encode(message);
+            Object fromJson = objectMapper.readValue(json, message.getClass());
+            Object fromBinary = BinaryCodec.decode(binary);
+
+            assertThat(fromBinary).isEqualTo(fromJson);
+            if (message instanceof Event)
+                assertThat(((Event) fromBinary).getTime()).isEqualTo(((Event) fromJson).getTime());
+            assertThat(binary.length).isLessThan(json.length);
+        }
+    }
+
+    @Test
+    void messages_larger_than_the_initial_buffer_are_encoded() {
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            errors.add("Error number " + i);
+        OrderRejectedEvent event = new OrderRejectedEvent(1, 11, errors);
+
+        assertThat(BinaryCodec.decode(BinaryCodec.encode(event))).isEqualTo(event);
+    }
+
+    @Test
+    void messages_are_decoded_from_direct_buffers() {
+        byte[] bytes = BinaryCodec.encode(requests().get(0));
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+
+        assertThat(BinaryCodec.decode(direct)).isEqualTo(requests().get(0));
+    }
+
+    @Test
+    void null_fields_are_kept() {
+        OrderRejectedEvent event = new OrderRejectedEvent(1, 11, null);
+        event.setTime(null);
+        DeleteOrderRq deleteOrderRq = new DeleteOrderRq();
+
+        OrderRejectedEvent decoded = (OrderRejectedEvent) BinaryCodec.decode(BinaryCodec.encode(event));
+        assertThat(decoded.getErrors()).isNull();
+        assertThat(decoded.getTime()).isNull();
+        assertThat(BinaryCodec.decode(BinaryCodec.encode(deleteOrderRq))).isEqualTo(deleteOrderRq);
+    }
+}
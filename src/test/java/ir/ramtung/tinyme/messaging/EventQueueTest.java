@@ -0,0 +1,181 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
+import ir.ramtung.tinyme.messaging.exception.EventQueueFullException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class EventQueueTest {
+    private final List<List<Event>> batches = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch senderEntered = new CountDownLatch(1);
+    private final CountDownLatch senderReleased = new CountDownLatch(1);
+    private EventQueue queue;
+
+    private void blockingSink(List<Event> events) {
+        senderEntered.countDown();
+        try {
+            senderReleased.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        batches.add(List.copyOf(events));
+    }
+
+    private EventQueue startedQueue(int capacity, int maxBatch, BackPressure backPressure) {
+        queue = new EventQueue("RS", capacity, maxBatch, backPressure, this::blockingSink);
+        queue.start();
+        return queue;
+    }
+
+    private static Event event(long requestId) {
+        return new OrderAcceptedEvent(requestId, requestId);
+    }
+
+    private List<Long> sentRequestIds() {
+        List<Long> ids = new ArrayList<>();
+        for (List<Event> batch : batches)
+            for (Event event : batch)
+                ids.add(((OrderAcceptedEvent) event).getRequestId());
+        return ids;
+    }
+
+    @AfterEach
+    void stopQueue() {
+        senderReleased.countDown();
+        if (queue != null)
+            queue.stop();
+    }
+
+    @Test
+    void events_queued_while_sending_go_out_in_order_in_one_batch() throws InterruptedException {
+        startedQueue(16, 16, BackPressure.BLOCK);
+        queue.offer(event(1));
+        senderEntered.await();
+        for (long id = 2; id <= 6; id++)
+            queue.offer(event(id));
+        senderReleased.countDown();
+        queue.stop();
+
+        assertThat(batches).hasSize(2);
+        assertThat(sentRequestIds()).containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+        EventQueue.Metrics metrics = queue.metrics();
+        assertThat(metrics.sent()).isEqualTo(6);
+        assertThat(metrics.batches()).isEqualTo(2);
+        assertThat(metrics.highWaterMark()).isEqualTo(5);
+        assertThat(metrics.size()).isZero();
+        assertThat(metrics.maxLatencyNanos()).isGreaterThanOrEqualTo(metrics.meanLatencyNanos()).isPositive();
+    }
+
+    @Test
+    void batches_are_no_larger_than_the_maximum() throws InterruptedException {
+        startedQueue(16, 4, BackPressure.BLOCK);
+        queue.offer(event(0));
+        senderEntered.await();
+        for (long id = 1; id <= 10; id++)
+            queue.offer(event(id));
+        senderReleased.countDown();
+        queue.stop();
+
+        assertThat(batches).extracting(List::size).containsExactly(1, 4, 4, 2);
+        assertThat(sentRequestIds()).containsExactlyElementsOf(LongStream.rangeClosed(0, 10).boxed().toList());
+    }
+
+    @Test
+    void drop_oldest_discards_the_oldest_queued_events_when_full() throws InterruptedException {
+        startedQueue(3, 16, BackPressure.DROP_OLDEST);
+        queue.offer(event(1));
+        senderEntered.await();
+        for (long id = 2; id <= 7; id++)
+            queue.offer(event(id));
+        senderReleased.countDown();
+        queue.stop();
+
+        assertThat(sentRequestIds()).containsExactly(1L, 5L, 6L, 7L);
+        assertThat(queue.metrics().dropped()).isEqualTo(3);
+    }
+
+    @Test
+    void a_full_drop_oldest_queue_stops_while_events_are_still_offered() {
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            for (int round = 0; round < 100; round++) {
+                EventQueue full = new EventQueue("RS", 1, 1, BackPressure.DROP_OLDEST, events -> {});
+                full.start();
+                AtomicBoolean offering = new AtomicBoolean(true);
+                List<Thread> publishers = new ArrayList<>();
+                for (int publisher = 0; publisher < 4; publisher++) {
+                    Thread thread = new Thread(() -> {
+                        try {
+                            while (offering.get())
+                                full.offer(event(1));
+                        } catch (IllegalStateException stopped) {
+                        }
+                    });
+                    thread.start();
+                    publishers.add(thread);
+                }
+                full.stop();
+                offering.set(false);
+                for (Thread thread : publishers)
+                    thread.join();
+            }
+        });
+    }
+
+    @Test
+    void fail_rejects_events_when_full() throws InterruptedException {
+        startedQueue(2, 16, BackPressure.FAIL);
+        queue.offer(event(1));
+        senderEntered.await();
+        queue.offer(event(2));
+        queue.offer(event(3));
+
+        assertThatThrownBy(() -> queue.offer(event(4))).isInstanceOf(EventQueueFullException.class);
+        senderReleased.countDown();
+        queue.stop();
+        assertThat(sentRequestIds()).containsExactly(1L, 2L, 3L);
+        assertThat(queue.metrics().rejected()).isEqualTo(1);
+    }
+
+    @Test
+    void a_failing_send_is_counted_and_later_batches_still_go_out() throws InterruptedException {
+        CountDownLatch firstSend = new CountDownLatch(1);
+        queue = new EventQueue("RS", 16, 16, BackPressure.BLOCK, events -> {
+            if (firstSend.getCount() > 0) {
+                firstSend.countDown();
+                throw new IllegalStateException("broker down");
+            }
+            batches.add(List.copyOf(events));
+        });
+        queue.start();
+        queue.offer(event(1));
+        firstSend.await();
+        queue.offer(event(2));
+        queue.stop();
+
+        assertThat(sentRequestIds()).containsExactly(2L);
+        assertThat(queue.metrics().failed()).isEqualTo(1);
+    }
+
+    @Test
+    void offering_to_a_stopped_queue_is_rejected() {
+        startedQueue(4, 4, BackPressure.BLOCK);
+        senderReleased.countDown();
+        queue.stop();
+
+        assertThatThrownBy(() -> queue.offer(event(1))).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,85 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.audit.AuditLog;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.domain.service.MatchingShards;
+import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.journal.FsyncPolicy;
+import ir.ramtung.tinyme.journal.RequestJournal;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchStateRq;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import jakarta.jms.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class RequestRoutingTest {
+    private OrderHandler orderHandler;
+    private MessageConverter messageConverter;
+    private MatchingShards matchingShards;
+    private RequestDispatcher requestDispatcher;
+
+    @BeforeEach
+    void setup() {
+        orderHandler = mock(OrderHandler.class);
+        messageConverter = mock(MessageConverter.class);
+        matchingShards = new MatchingShards(2);
+        RequestJournal requestJournal = new RequestJournal("", FsyncPolicy.NONE, 100, 16, 16, null, null);
+        requestDispatcher = new RequestDispatcher(orderHandler, matchingShards, requestJournal, messageConverter,
+                new AuditLog("", 0, 16));
+    }
+
+    @AfterEach
+    void stopShards() {
+        matchingShards.stop();
+    }
+
+    private Message message(Object payload) throws Exception {
+        Message message = mock(Message.class);
+        when(message.getStringProperty(MessagingConfig.TYPE_PROPERTY))
+                .thenReturn(payload == null ? "ir.ramtung.tinyme.messaging.request.Unknown" : payload.getClass().getName());
+        when(messageConverter.fromMessage(message)).thenReturn(payload);
+        return message;
+    }
+
+    @Test
+    void each_request_type_reaches_its_handler() throws Exception {
+        EnterOrderRq enterOrderRq = EnterOrderRq.createNewOrderRq(1, "ABC", 200, LocalDateTime.now(), Side.SELL, 300,
+                15450, 0, 0, 0, 0);
+        DeleteOrderRq deleteOrderRq = new DeleteOrderRq(2, "ABC", Side.SELL, 200);
+        ChangeMatchStateRq changeMatchStateRq = ChangeMatchStateRq.changeMatchStateRq("XYZ", MatchingState.AUCTION);
+
+        requestDispatcher.receive(message(enterOrderRq));
+        requestDispatcher.receive(message(deleteOrderRq));
+        requestDispatcher.receive(message(changeMatchStateRq));
+
+        verify(orderHandler, timeout(1000)).handleEnterOrder(enterOrderRq);
+        verify(orderHandler, timeout(1000)).handleDeleteOrder(deleteOrderRq);
+        verify(orderHandler, timeout(1000)).handleChangeMatchStateRq(changeMatchStateRq);
+    }
+
+    @Test
+    void requests_are_counted_by_type_and_unknown_types_are_dropped() throws Exception {
+        EnterOrderRq enterOrderRq = EnterOrderRq.createNewOrderRq(1, "ABC", 200, LocalDateTime.now(), Side.SELL, 300,
+                15450, 0, 0, 0, 0);
+        Message unknown = message(null);
+
+        requestDispatcher.receive(message(enterOrderRq));
+        requestDispatcher.receive(message(enterOrderRq));
+        requestDispatcher.receive(unknown);
+
+        verify(messageConverter, never()).fromMessage(unknown);
+        assertThat(requestDispatcher.receivedCounts()).containsEntry("EnterOrderRq", 2L)
+                .containsEntry("DeleteOrderRq", 0L)
+                .containsEntry("ChangeMatchStateRq", 0L)
+                .containsEntry("unknown", 1L);
+    }
+}
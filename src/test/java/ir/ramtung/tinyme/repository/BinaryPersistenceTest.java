@@ -0,0 +1,110 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class BinaryPersistenceTest {
+    @TempDir
+    Path directory;
+    private BrokerRepository brokerRepository;
+    private ShareholderRepository shareholderRepository;
+    private SecurityRepository securityRepository;
+    private final LocalDateTime entryTime = LocalDateTime.of(2024, 3, 1, 9, 30, 15, 123_456_789);
+
+    @BeforeEach
+    void setupState() {
+        brokerRepository = new BrokerRepository();
+        shareholderRepository = new ShareholderRepository();
+        securityRepository = new SecurityRepository();
+        Broker broker = Broker.builder().brokerId(1).name("broker").credit(1_000_000).build();
+        brokerRepository.addBroker(broker);
+        Shareholder shareholder = Shareholder.builder().shareholderId(2).name("holder").build();
+        shareholderRepository.addShareholder(shareholder);
+        Security security = Security.builder().isin("ABC").tickSize(10).lotSize(5).build();
+        securityRepository.addSecurity(security);
+        shareholder.incPosition(security, 5_000);
+        OrderBook orderBook = security.getOrderBook();
+        orderBook.enqueue(new Order(1, security, Side.BUY, 100, 15_400, broker, shareholder, entryTime, 0));
+        orderBook.enqueue(new Order(2, security, Side.BUY, 200, 15_500, broker, shareholder, entryTime, 50));
+        orderBook.enqueue(new Order(3, security, Side.BUY, 300, 15_400, broker, shareholder, entryTime, 0));
+        IcebergOrder iceberg = new IcebergOrder(4, security, Side.SELL, 500, 15_600, broker, shareholder,
+                entryTime, 100, 0);
+        orderBook.enqueue(iceberg);
+        iceberg.decreaseQuantity(40);
+        orderBook.updateQuantity(iceberg);
+        StopLimitOrder stopLimitOrder = new StopLimitOrder(5, security, Side.SELL, 70, 15_300, broker, shareholder,
+                entryTime, 15_350, OrderStatus.QUEUED);
+        stopLimitOrder.setRequestId(9);
+        orderBook.enqueueInactiveStopLimitOrder(stopLimitOrder);
+        orderBook.enqueueInactiveStopLimitOrder(new StopLimitOrder(6, security, Side.BUY, 80, 15_800, broker,
+                shareholder, entryTime, 15_750, OrderStatus.QUEUED));
+    }
+
+    private void writeAll() throws IOException {
+        BinaryPersistence.writeBrokers(directory.resolve("broker.bin"), brokerRepository.allBrokers());
+        BinaryPersistence.writeShareholders(directory.resolve("shareholder.bin"),
+                shareholderRepository.allShareholders());
+        BinaryPersistence.writeSecurities(directory.resolve("security.bin"), securityRepository.allSecurities());
+        BinaryPersistence.writePositions(directory.resolve("position.bin"), shareholderRepository.allShareholders());
+        BinaryPersistence.writeOrderBooks(directory.resolve("orderbook.bin"), securityRepository.allSecurities());
+    }
+
+    @Test
+    void written_files_load_into_the_same_state() throws IOException {
+        writeAll();
+        BrokerRepository brokers = new BrokerRepository();
+        ShareholderRepository shareholders = new ShareholderRepository();
+        SecurityRepository securities = new SecurityRepository();
+        BinaryPersistence.readBrokers(directory.resolve("broker.bin"), brokers);
+        BinaryPersistence.readShareholders(directory.resolve("shareholder.bin"), shareholders);
+        BinaryPersistence.readSecurities(directory.resolve("security.bin"), securities);
+        BinaryPersistence.readPositions(directory.resolve("position.bin"), shareholders, securities);
+        BinaryPersistence.readOrderBooks(directory.resolve("orderbook.bin"), securities, brokers, shareholders);
+
+        assertThat(brokers.findBrokerById(1).getName()).isEqualTo("broker");
+        assertThat(brokers.findBrokerById(1).getCredit()).isEqualTo(1_000_000);
+        Security security = securities.findSecurityByIsin("ABC");
+        assertThat(security.getTickSize()).isEqualTo(10);
+        assertThat(security.getLotSize()).isEqualTo(5);
+        assertThat(shareholders.findShareholderById(2).hasEnoughPositionsOn(security, 5_000)).isTrue();
+        assertThat(security.getOrderBook().getBuyQueue())
+                .extracting(Order::getOrderId, Order::getQuantity, Order::getMinimumExecutionQuantity)
+                .containsExactly(
+                        tuple(2L, 200, 50),
+                        tuple(1L, 100, 0),
+                        tuple(3L, 300, 0));
+        assertThat(security.getOrderBook().getBuyQueue().get(0).getEntryTime()).isEqualTo(entryTime);
+        IcebergOrder iceberg = (IcebergOrder) security.getOrderBook().getSellQueue().get(0);
+        assertThat(iceberg.getTotalQuantity()).isEqualTo(460);
+        assertThat(iceberg.getDisplayedQuantity()).isEqualTo(60);
+        assertThat(iceberg.getPeakSize()).isEqualTo(100);
+        assertThat(iceberg.getBroker()).isSameAs(brokers.findBrokerById(1));
+        assertThat(security.getOrderBook().getInactiveStopLimitOrders(Side.SELL))
+                .extracting(Order::getOrderId, Order::getQuantity, Order::getStopPrice, Order::getRequestId)
+                .containsExactly(tuple(5L, 70, 15_350.0, 9L));
+        assertThat(security.getOrderBook().getInactiveStopLimitOrders(Side.BUY))
+                .extracting(Order::getOrderId, Order::getPrice, Order::getStopPrice)
+                .containsExactly(tuple(6L, 15_800, 15_750.0));
+        security.getOrderBook().checkConsistency();
+    }
+
+    @Test
+    void a_file_of_another_kind_is_rejected() throws IOException {
+        writeAll();
+        Files.copy(directory.resolve("broker.bin"), directory.resolve("copy.bin"));
+
+        assertThatThrownBy(() -> BinaryPersistence.readShareholders(directory.resolve("copy.bin"),
+                new ShareholderRepository())).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,115 @@
+package ir.ramtung.tinyme.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PersistenceToolTest {
+    @TempDir
+    Path directory;
+    private Path csv;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @BeforeEach
+    void writeCsvFiles() throws IOException {
+        csv = Files.createDirectory(directory.resolve("csv"));
+        Files.writeString(csv.resolve("broker.csv"), """
+                brokerId,name,credit
+                1,broker1,100000
+                2,"broker, two",200000
+                1,duplicate,5
+                """);
+        Files.writeString(csv.resolve("shareholder.csv"), """
+                shareholderId,name
+                1,shareholder1
+                """);
+        Files.writeString(csv.resolve("security.csv"), """
+                isin,tickSize,lotSize
+                SEC1,1,1
+                SEC2,1,0
+                """);
+        Files.writeString(csv.resolve("position.csv"), """
+                shareholderId,isin,positions
+                1,SEC1,1000
+                1,SEC2,800
+                """);
+        List<String> orders = new ArrayList<>();
+        orders.add("orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,peakSize,displayedQuantity,"
+                + "minimumExecutionQuantity,stopPrice,requestId");
+        for (int i = 1; i <= 2 * CsvImporter.CHUNK_LINES + 10; i++)
+            orders.add(i + ",SEC1," + (i % 2 == 0 ? "BUY" : "SELL") + ",10," + (i % 2 == 0 ? 100 : 200) + ","
+                    + (i % 3 == 0 ? 2 : 1) + ",1,2024-02-23T10:59:54.970,0,0,0");
+        orders.add("9000000,SEC1,BUY,500,100,1,1,2024-02-23T10:59:55,100,40,0");
+        orders.add("9000001,SEC1,BUY,10,100,7,1,2024-02-23T10:59:55,0,0,0");
+        orders.add("9000002,SEC1,SIDEWAYS,10,100,1,1,2024-02-23T10:59:55,0,0,0");
+        orders.add("9000003,SEC1,SELL,20,150,1,1,2024-02-23T10:59:55,0,0,0,160.0,42");
+        Files.write(csv.resolve("orderbook.csv"), orders);
+    }
+
+    private int run(String... args) throws Exception {
+        return new PersistenceTool(new PrintStream(out, true), new PrintStream(err, true)).run(args);
+    }
+
+    @Test
+    void import_reports_rejected_lines_and_keeps_the_rest() throws Exception {
+        int status = run("import", csv.toString(), directory.resolve("data").toString());
+
+        assertThat(status).isEqualTo(1);
+        assertThat(err.toString().lines()).containsExactlyInAnyOrder(
+                "broker.csv:4: duplicate broker 1: 1,duplicate,5",
+                "security.csv:3: lot size must be positive: SEC2,1,0",
+                "position.csv:3: unknown security SEC2: 1,SEC2,800",
+                "orderbook.csv:" + (2 * CsvImporter.CHUNK_LINES + 13)
+                        + ": unknown broker 7: 9000001,SEC1,BUY,10,100,7,1,2024-02-23T10:59:55,0,0,0",
+                "orderbook.csv:" + (2 * CsvImporter.CHUNK_LINES + 14)
+                        + ": Invalid value for order side: 9000002,SEC1,SIDEWAYS,10,100,1,1,2024-02-23T10:59:55,0,0,0");
+        assertThat(out.toString()).contains("orderbook.csv", "rows/s");
+        assertThat(directory.resolve("data/orderbook.bin")).exists();
+    }
+
+    @Test
+    void exported_binary_data_matches_the_accepted_rows_in_queue_order() throws Exception {
+        run("import", csv.toString(), directory.resolve("data").toString());
+        int status = run("export", directory.resolve("data").toString(), directory.resolve("out").toString());
+
+        assertThat(status).isZero();
+        assertThat(Files.readAllLines(directory.resolve("out/broker.csv"))).containsExactlyInAnyOrder(
+                "brokerId,name,credit", "1,broker1,100000", "2,\"broker, two\",200000");
+        assertThat(Files.readAllLines(directory.resolve("out/position.csv")))
+                .containsExactly("shareholderId,isin,positions", "1,SEC1,1000");
+        List<String> orders = Files.readAllLines(directory.resolve("out/orderbook.csv"));
+        assertThat(orders).hasSize(2 * CsvImporter.CHUNK_LINES + 13);
+        assertThat(orders.get(1)).isEqualTo("2,SEC1,BUY,10,100,1,1,2024-02-23T10:59:54.970,0,0,0");
+        assertThat(orders.get(2)).isEqualTo("4,SEC1,BUY,10,100,1,1,2024-02-23T10:59:54.970,0,0,0");
+        assertThat(orders).contains("9000000,SEC1,BUY,500,100,1,1,2024-02-23T10:59:55,100,40,0");
+        assertThat(orders.get(orders.size() - 2)).startsWith(2 * CsvImporter.CHUNK_LINES + 9 + ",SEC1,SELL");
+        assertThat(orders.get(orders.size() - 1))
+                .isEqualTo("9000003,SEC1,SELL,20,150,1,1,2024-02-23T10:59:55,0,0,0,160.0,42");
+    }
+
+    @Test
+    void csv_import_round_trips_through_the_csv_format() throws Exception {
+        run("import", csv.toString(), directory.resolve("once").toString(), "csv");
+        out.reset();
+        err.reset();
+        int status = run("import", directory.resolve("once").toString(), directory.resolve("twice").toString(),
+                "csv");
+
+        assertThat(status).isZero();
+        assertThat(err.toString()).isEmpty();
+        for (String file : List.of("broker.csv", "shareholder.csv", "security.csv", "position.csv", "orderbook.csv"))
+            assertThat(Files.readAllLines(directory.resolve("twice").resolve(file)))
+                    .containsExactlyInAnyOrderElementsOf(Files.readAllLines(directory.resolve("once").resolve(file)));
+    }
+}
@@ -0,0 +1,184 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.domain.service.MatchingShards;
+import ir.ramtung.tinyme.journal.FsyncPolicy;
+import ir.ramtung.tinyme.journal.JournalReplayer;
+import ir.ramtung.tinyme.journal.RequestJournal;
+import ir.ramtung.tinyme.messaging.EventPublisher;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchStateRq;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.Mockito.*;
+
+class SnapshotServiceTest {
+    @TempDir
+    Path directory;
+    private MatchingShards matchingShards;
+    private RequestJournal journal;
+    private BrokerRepository brokerRepository;
+    private ShareholderRepository shareholderRepository;
+    private SecurityRepository securityRepository;
+    private final LocalDateTime entryTime = LocalDateTime.of(2024, 3, 1, 9, 30);
+
+    @BeforeEach
+    void setupState() {
+        matchingShards = new MatchingShards(2);
+        brokerRepository = new BrokerRepository();
+        shareholderRepository = new ShareholderRepository();
+        securityRepository = new SecurityRepository();
+        Broker broker = Broker.builder().brokerId(1).name("broker").credit(1_000_000).build();
+        brokerRepository.addBroker(broker);
+        Shareholder shareholder = Shareholder.builder().shareholderId(2).name("holder").build();
+        shareholderRepository.addShareholder(shareholder);
+        for (String isin : List.of("ABC", "XYZ")) {
+            Security security = Security.builder().isin(isin).tickSize(10).build();
+            securityRepository.addSecurity(security);
+            shareholder.incPosition(security, 5_000);
+            OrderBook orderBook = security.getOrderBook();
+            orderBook.setLastTradePrice(15_500);
+            orderBook.enqueue(new Order(1, security, Side.BUY, 100, 15_400, broker, shareholder, entryTime, 0));
+            orderBook.enqueue(new Order(2, security, Side.BUY, 200, 15_400, broker, shareholder, entryTime, 0));
+            IcebergOrder iceberg = new IcebergOrder(3, security, Side.SELL, 500, 15_600, broker, shareholder,
+                    entryTime, 100, 0);
+            orderBook.enqueue(iceberg);
+            iceberg.decreaseQuantity(40);
+            orderBook.updateQuantity(iceberg);
+            orderBook.enqueueInactiveStopLimitOrder(new StopLimitOrder(4, security, Side.BUY, 50, 16_000, broker,
+                    shareholder, entryTime, 15_800));
+        }
+    }
+
+    @AfterEach
+    void stopServices() {
+        if (journal.isRunning())
+            journal.stop();
+        matchingShards.stop();
+    }
+
+    private RequestJournal journal(JournalReplayer replayer) {
+        return new RequestJournal(directory.resolve("requests.journal").toString(), FsyncPolicy.EVERY_COMMIT, 100,
+                16, 1024, replayer, mock(EventPublisher.class));
+    }
+
+    private SnapshotService snapshotService(RequestJournal journal, BrokerRepository brokers,
+            ShareholderRepository shareholders, SecurityRepository securities) {
+        return new SnapshotService(directory.resolve("state.snapshot").toString(), 0, brokers, shareholders,
+                securities, matchingShards, journal);
+    }
+
+    private ChangeMatchStateRq request(String isin) {
+        return ChangeMatchStateRq.changeMatchStateRq(isin, MatchingState.AUCTION);
+    }
+
+    @Test
+    void restoring_a_snapshot_rebuilds_books_credits_and_positions() throws Exception {
+        journal = journal(mock(JournalReplayer.class));
+        journal.start();
+        snapshotService(journal, brokerRepository, shareholderRepository, securityRepository).takeSnapshot();
+        journal.stop();
+
+        BrokerRepository brokers = new BrokerRepository();
+        ShareholderRepository shareholders = new ShareholderRepository();
+        SecurityRepository securities = new SecurityRepository();
+        assertThat(snapshotService(journal, brokers, shareholders, securities).restore()).isTrue();
+
+        assertThat(brokers.findBrokerById(1).getCredit()).isEqualTo(1_000_000);
+        Shareholder shareholder = shareholders.findShareholderById(2);
+        for (String isin : List.of("ABC", "XYZ")) {
+            Security security = securities.findSecurityByIsin(isin);
+            OrderBook orderBook = security.getOrderBook();
+            orderBook.checkConsistency();
+            assertThat(security.getTickSize()).isEqualTo(10);
+            assertThat(orderBook.getLastTradePrice()).isEqualTo(15_500);
+            assertThat(shareholder.getPositions().get(security)).isEqualTo(5_000);
+            assertThat(orderBook.getBuyQueue()).extracting(Order::getOrderId).containsExactly(1L, 2L);
+            IcebergOrder iceberg = (IcebergOrder) orderBook.findByOrderId(Side.SELL, 3);
+            assertThat(iceberg.getTotalQuantity()).isEqualTo(460);
+            assertThat(iceberg.getDisplayedQuantity()).isEqualTo(60);
+            assertThat(iceberg.getEntryTime()).isEqualTo(entryTime);
+            assertThat(orderBook.findInActiveByOrderId(Side.BUY, 4).getStopPrice()).isEqualTo(15_800);
+            assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(460);
+        }
+    }
+
+    @Test
+    void restored_orders_keep_their_sequences() throws Exception {
+        OrderBook book = securityRepository.findSecurityByIsin("ABC").getOrderBook();
+        book.findByOrderId(Side.BUY, 1).stamp(1_000_001);
+        book.findInActiveByOrderId(Side.BUY, 4).stamp(1_000_002);
+        journal = journal(mock(JournalReplayer.class));
+        journal.start();
+        snapshotService(journal, brokerRepository, shareholderRepository, securityRepository).takeSnapshot();
+        journal.stop();
+
+        SecurityRepository securities = new SecurityRepository();
+        snapshotService(journal, new BrokerRepository(), new ShareholderRepository(), securities).restore();
+
+        OrderBook restored = securities.findSecurityByIsin("ABC").getOrderBook();
+        assertThat(restored.findByOrderId(Side.BUY, 1).getSequence()).isEqualTo(1_000_001);
+        assertThat(restored.findInActiveByOrderId(Side.BUY, 4).getSequence()).isEqualTo(1_000_002);
+        assertThat(EngineClock.nextSequence()).isGreaterThan(1_000_002);
+    }
+
+    @Test
+    void journal_is_replayed_from_the_snapshot_position() throws Exception {
+        journal = journal(mock(JournalReplayer.class));
+        journal.start();
+        journal.append(request("ABC"), () -> {});
+        snapshotService(journal, brokerRepository, shareholderRepository, securityRepository).takeSnapshot();
+        journal.append(request("XYZ"), () -> {});
+        journal.stop();
+
+        JournalReplayer replayer = mock(JournalReplayer.class);
+        journal = journal(replayer);
+        snapshotService(journal, new BrokerRepository(), new ShareholderRepository(), new SecurityRepository())
+                .restore();
+        journal.start();
+
+        verify(replayer).replay(request("XYZ"));
+        verifyNoMoreInteractions(replayer);
+    }
+
+    @Test
+    void a_shard_that_cannot_take_the_capture_releases_the_others() {
+        matchingShards = spy(matchingShards);
+        doThrow(new RejectedExecutionException("stopped")).when(matchingShards).executeOnShard(eq(1), any());
+        journal = journal(mock(JournalReplayer.class));
+        journal.start();
+        SnapshotService snapshotService = snapshotService(journal, brokerRepository, shareholderRepository,
+                securityRepository);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () ->
+                assertThatThrownBy(snapshotService::takeSnapshot).isInstanceOf(RejectedExecutionException.class));
+        assertThat(directory.resolve("state.snapshot")).doesNotExist();
+    }
+
+    @Test
+    void discarding_removes_the_snapshot() throws Exception {
+        journal = journal(mock(JournalReplayer.class));
+        journal.start();
+        SnapshotService snapshotService = snapshotService(journal, brokerRepository, shareholderRepository,
+                securityRepository);
+        snapshotService.takeSnapshot();
+
+        snapshotService.discard();
+
+        assertThat(Files.exists(directory.resolve("state.snapshot"))).isFalse();
+        assertThat(snapshotService.restore()).isFalse();
+    }
+}